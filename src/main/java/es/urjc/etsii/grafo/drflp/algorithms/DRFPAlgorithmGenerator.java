@@ -5,9 +5,13 @@ import es.urjc.etsii.grafo.drflp.constructives.DRFPRandomConstructive;
 import es.urjc.etsii.grafo.drflp.constructives.DRFPRandomFakeFacilitiesConstructive;
 import es.urjc.etsii.grafo.drflp.constructives.grasp.DRFPFakeFacilitiesBySwapListManager;
 import es.urjc.etsii.grafo.drflp.constructives.tetris.DRFPTetrisConstructive;
+import es.urjc.etsii.grafo.drflp.model.CachedMoveBySwapNeighborhood;
 import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
+import es.urjc.etsii.grafo.drflp.model.Granularity;
+import es.urjc.etsii.grafo.drflp.model.LazyMoveBySwapNeighborhood;
 import es.urjc.etsii.grafo.drflp.model.MoveBySwapNeighborhood;
+import es.urjc.etsii.grafo.drflp.model.ParallelMoveBySwapNeighborhood;
 import es.urjc.etsii.grafo.drflp.shake.IRSDestructive;
 import es.urjc.etsii.grafo.drflp.shake.RandomRemoveDestructive;
 import es.urjc.etsii.grafo.solver.algorithms.Algorithm;
@@ -17,10 +21,13 @@ import es.urjc.etsii.grafo.solver.create.grasp.GreedyRandomGRASPConstructive;
 import es.urjc.etsii.grafo.solver.create.grasp.RandomGreedyGRASPConstructive;
 import es.urjc.etsii.grafo.solver.destructor.DestroyRebuild;
 import es.urjc.etsii.grafo.solver.destructor.Shake;
+import es.urjc.etsii.grafo.solver.improve.Improver;
 import es.urjc.etsii.grafo.solver.improve.ls.LocalSearchBestImprovement;
+import es.urjc.etsii.grafo.solver.improve.ls.LocalSearchFirstImprovement;
 import es.urjc.etsii.grafo.solver.irace.IraceAlgorithmGenerator;
 import es.urjc.etsii.grafo.solver.irace.IraceRuntimeConfiguration;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -51,8 +58,26 @@ public class DRFPAlgorithmGenerator extends IraceAlgorithmGenerator<DRFLPSolutio
         // Always minimize cost
         boolean maximizing = false;
 
-        // Local Search is not configurable
-        var moveBySwapLS = new LocalSearchBestImprovement<>(maximizing, new MoveBySwapNeighborhood());
+        // Granular neighborhoods only evaluate destinations near the granulark heaviest partners of each facility,
+        // at most granularw positions away from them. Disabled if not configured.
+        Granularity granularity = switch (config.getValue("granular").orElse("off")){
+            case "off" -> null;
+            case "on" -> new Granularity(parseInt(config.getValue("granulark").orElseThrow()), parseInt(config.getValue("granularw").orElseThrow()));
+            default -> throw new IllegalArgumentException("Unknown granular mode: " + config.getValue("granular").orElseThrow());
+        };
+
+        // Choose local search strategy, best improvement if not configured.
+        // First improvement uses the lazy neighborhood, so it stops evaluating after the first improving sweep.
+        // Don't look bits skip facilities whose surroundings did not change since they had no improving moves.
+        // Parallel scans the neighborhood with a dedicated pool of lsthreads workers, shared by every multistart iteration,
+        // instead of the common pool, so the total number of threads stays bounded. Only worth it when iterationsratio is low
+        Improver<DRFLPSolution, DRFLPInstance> moveBySwapLS = switch (config.getValue("ls").orElse("best")){
+            case "best" -> new LocalSearchBestImprovement<>(maximizing, new MoveBySwapNeighborhood(granularity));
+            case "first" -> new LocalSearchFirstImprovement<>(maximizing, new LazyMoveBySwapNeighborhood(granularity));
+            case "dontlook" -> new LocalSearchBestImprovement<>(maximizing, new CachedMoveBySwapNeighborhood(true, granularity));
+            case "parallel" -> new LocalSearchBestImprovement<>(maximizing, new ParallelMoveBySwapNeighborhood(new ForkJoinPool(parseInt(config.getValue("lsthreads").orElseThrow())), granularity));
+            default -> throw new IllegalArgumentException("Unknown local search strategy: " + config.getValue("ls").orElseThrow());
+        };
 
         // Choose stop implementation with their parameters
         var stop = switch (config.getValue("stop").orElseThrow()){
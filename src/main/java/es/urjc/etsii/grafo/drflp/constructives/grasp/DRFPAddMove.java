@@ -4,7 +4,6 @@ package es.urjc.etsii.grafo.drflp.constructives.grasp;
 import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
 import es.urjc.etsii.grafo.drflp.model.Facility;
-import es.urjc.etsii.grafo.drflp.model.FacilityPosition;
 import es.urjc.etsii.grafo.solution.EagerMove;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 
@@ -14,27 +13,40 @@ public class DRFPAddMove extends EagerMove<DRFLPSolution, DRFLPInstance> {
     private final double cost;
     private final int position;
     private final int row;
-    private final FacilityPosition facilityPosition;
+    private final Facility facility;
+    // Number of interchangeable pending facilities this move represents, fake facilities with the same width
+    private final int multiplicity;
 
     public DRFPAddMove(DRFLPSolution solution, int row, int position, Facility f, double cost) {
+        this(solution, row, position, f, cost, 1);
+    }
+
+    /**
+     * Create a move that inserts one of several interchangeable pending facilities
+     * @param f pending facility inserted when the move is executed
+     * @param multiplicity number of pending facilities interchangeable with f, including f
+     */
+    public DRFPAddMove(DRFLPSolution solution, int row, int position, Facility f, double cost, int multiplicity) {
         super(solution);
         this.row = row;
         this.position = position;
-        this.facilityPosition = new FacilityPosition(f);
+        this.facility = f;
         this.cost = cost;
+        this.multiplicity = multiplicity;
     }
 
     public DRFPAddMove(DRFLPSolution solution, int row, int position, Facility f) {
         super(solution);
         this.row = row;
         this.position = position;
-        this.facilityPosition = new FacilityPosition(f);
-        this.cost = solution.insertCost(row, position, facilityPosition);
+        this.facility = f;
+        this.cost = solution.insertCost(row, position, facility);
+        this.multiplicity = 1;
     }
 
     @Override
     protected void _execute() {
-        this.s.insert(row, position, cost, facilityPosition);
+        this.s.insert(row, position, cost, facility);
     }
 
     @Override
@@ -42,6 +54,13 @@ public class DRFPAddMove extends EagerMove<DRFLPSolution, DRFLPInstance> {
         return this.cost;
     }
 
+    /**
+     * Number of interchangeable pending facilities represented by this move, 1 for real facilities
+     */
+    public int getMultiplicity() {
+        return multiplicity;
+    }
+
     @Override
     public boolean improves() {
         return DoubleComparator.isNegative(this.getValue());
@@ -51,9 +70,10 @@ public class DRFPAddMove extends EagerMove<DRFLPSolution, DRFLPInstance> {
     public String toString() {
         return "DRFPAddMove{" +
                 "c=" + cost +
-                ", f=" + facilityPosition.facility.id +
+                ", f=" + facility.id +
                 ", row=" + row +
                 ", pos=" + position +
+                (multiplicity > 1 ? ", x" + multiplicity : "") +
                 '}';
     }
 
@@ -62,12 +82,12 @@ public class DRFPAddMove extends EagerMove<DRFLPSolution, DRFLPInstance> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DRFPAddMove that = (DRFPAddMove) o;
-        return Double.compare(that.cost, cost) == 0 && position == that.position && row == that.row && Objects.equals(facilityPosition, that.facilityPosition);
+        return Double.compare(that.cost, cost) == 0 && position == that.position && row == that.row && multiplicity == that.multiplicity && Objects.equals(facility, that.facility);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(cost, position, row, facilityPosition);
+        return Objects.hash(cost, position, row, facility, multiplicity);
     }
 
     @Override
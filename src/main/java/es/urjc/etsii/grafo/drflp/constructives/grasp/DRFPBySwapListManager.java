@@ -3,10 +3,9 @@ package es.urjc.etsii.grafo.drflp.constructives.grasp;
 import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
 import es.urjc.etsii.grafo.drflp.model.Facility;
-import es.urjc.etsii.grafo.drflp.model.MoveBySwapNeighborhood;
+import es.urjc.etsii.grafo.drflp.model.FixedPoint;
+import es.urjc.etsii.grafo.drflp.model.InsertionProfiler;
 import es.urjc.etsii.grafo.solver.create.grasp.GRASPListManager;
-import es.urjc.etsii.grafo.util.DoubleComparator;
-import es.urjc.etsii.grafo.util.ValidationUtil;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,6 +14,7 @@ public class DRFPBySwapListManager extends GRASPListManager<DRFPAddMove, DRFLPSo
 
     /**
      * Generate initial candidate list. The list will be sorted if necessary by the constructive method.
+     * The insertion costs of each pending facility in each row are profiled in O(n), see InsertionProfiler.
      *
      * @param solution Current solution
      * @return a candidate list
@@ -23,65 +23,39 @@ public class DRFPBySwapListManager extends GRASPListManager<DRFPAddMove, DRFLPSo
     public List<DRFPAddMove> buildInitialCandidateList(DRFLPSolution solution) {
         var list = new ArrayList<DRFPAddMove>();
         int nRows = solution.getInstance().getNRows();
-
-        var pendingFacilities = new ArrayList<>(solution.getNotAssignedFacilities());
-        for (var f : pendingFacilities) {
-            for (int rowIndex = 0; rowIndex < nRows; rowIndex++) {
-                if (solution.getRowSize(rowIndex) > 0) {
-                    doInsertBySwap(list, solution, rowIndex, f);
-                } else {
-                    list.add(new DRFPAddMove(solution, rowIndex, 0, f));
+        var costs = new long[solution.getNAssignedFacilities() + 1];
+        var fakeCounts = DRFPListManager.pendingFakeCounts(solution);
+
+        for (int slot = solution.nextPendingSlot(0); slot >= 0; slot = solution.nextPendingSlot(slot + 1)) {
+            var f = solution.getPendingFacility(slot);
+            // Fake facilities with the same width are interchangeable: only the first one is evaluated,
+            // its moves represent every pending fake facility of its width
+            int multiplicity = 1;
+            if (f.fake) {
+                Integer count = fakeCounts.remove(f.width);
+                if (count == null) {
+                    continue;
                 }
+                multiplicity = count;
+            }
+            for (int rowIndex = 0; rowIndex < nRows; rowIndex++) {
+                doInsertBySwap(list, solution, rowIndex, f, costs, multiplicity);
             }
         }
 
         return list;
     }
 
-    private void doInsertBySwap(List<DRFPAddMove> moves, DRFLPSolution solution, int rowIndex, Facility f) {
-        var prevScore = solution.getScore();
-        ValidationUtil.assertValidScore(solution);
-
-        // Put facility at end of row
-        int index = solution.getRowSize(rowIndex);
-        double accCost = insertAtLast(solution, rowIndex, f);
-        moves.add(new DRFPAddMove(solution, rowIndex, index, f, accCost));
-
-        // Do insert by swap, facility ends at 0 index
-        var _moves = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
-        MoveBySwapNeighborhood.right2LeftConstructive(accCost, _moves, solution, rowIndex, index);
-
-        for (var _move : _moves) {
-            var move = new DRFPAddMove(solution, _move.getRowDest(), _move.getIndexDest(), f, _move.getScoreChange());
-            moves.add(move);
+    /**
+     * Add the moves inserting f at every position of the given row, from the end of the row to the start,
+     * as sweeping it to the left by consecutive swaps would. The solution is not modified.
+     */
+    private void doInsertBySwap(List<DRFPAddMove> moves, DRFLPSolution solution, int rowIndex, Facility f, long[] costs, int multiplicity) {
+        InsertionProfiler.profile(solution, rowIndex, f, costs);
+        for (int index = solution.getRowSize(rowIndex); index >= 0; index--) {
+            assert costs[index] == FixedPoint.toFixed(solution.insertCost(rowIndex, index, f));
+            moves.add(new DRFPAddMove(solution, rowIndex, index, f, FixedPoint.toDouble(costs[index]), multiplicity));
         }
-        // Delete facility from solution
-        deleteFirst(solution, rowIndex, f);
-
-        ValidationUtil.assertValidScore(solution);
-        assert DoubleComparator.equals(solution.getScore(), prevScore);
-
-    }
-
-    private void deleteFirst(DRFLPSolution solution, int rowId, Facility f) {
-        var rowData = solution.getSolutionData()[rowId];
-        // Verify 0 facility is our target
-        assert rowData[0].facility.id == f.id;
-        solution.remove(rowId, 0);
-    }
-
-    private double insertAtLast(DRFLPSolution solution, int rowId, Facility f) {
-        int position = solution.getRowSize(rowId);
-        DRFPAddMove addMove = new DRFPAddMove(solution, rowId, position, f);
-        // Bypass framework checks, do not increment s.version
-        double oldScore = solution.getScore();
-        double delta = addMove.getValue();
-        addMove._execute();
-
-        assert DoubleComparator.equals(oldScore + delta, solution.getScore());
-        ValidationUtil.assertValidScore(solution);
-
-        return delta;
     }
 
     /**
@@ -94,8 +68,8 @@ public class DRFPBySwapListManager extends GRASPListManager<DRFPAddMove, DRFLPSo
      */
     @Override
     public List<DRFPAddMove> updateCandidateList(DRFLPSolution solution, DRFPAddMove move, List<DRFPAddMove> candidateList, int index) {
-        // List can be partially updated / modified
-        // recalculating from scratch is ok, can be optimized latter if necessary
+        // Placing a facility shifts the rest of its row, which changes the insertion costs of every pending facility
+        // with a partner in the shifted part, in every row and position: recalculating from scratch costs the same
         return buildInitialCandidateList(solution);
     }
 
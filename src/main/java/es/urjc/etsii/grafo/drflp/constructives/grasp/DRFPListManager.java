@@ -2,15 +2,20 @@ package es.urjc.etsii.grafo.drflp.constructives.grasp;
 
 import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
+import es.urjc.etsii.grafo.drflp.model.FixedPoint;
+import es.urjc.etsii.grafo.drflp.model.InsertionProfiler;
 import es.urjc.etsii.grafo.solver.create.grasp.GRASPListManager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DRFPListManager extends GRASPListManager<DRFPAddMove, DRFLPSolution, DRFLPInstance> {
 
     /**
      * Generate initial candidate list. The list will be sorted if necessary by the constructive method.
+     * The insertion costs of each pending facility in each row are profiled in O(n), see InsertionProfiler.
      * @param solution Current solution
      * @return a candidate list
      */
@@ -18,14 +23,29 @@ public class DRFPListManager extends GRASPListManager<DRFPAddMove, DRFLPSolution
     public List<DRFPAddMove> buildInitialCandidateList(DRFLPSolution solution) {
         var list = new ArrayList<DRFPAddMove>();
         int nRows = solution.getInstance().getNRows();
+        var costs = new long[solution.getNAssignedFacilities() + 1];
+        var fakeCounts = pendingFakeCounts(solution);
 
         // Generate a list with all valid movements for current solution
-        for(var f: solution.getNotAssignedFacilities()){
+        for(int slot = solution.nextPendingSlot(0); slot >= 0; slot = solution.nextPendingSlot(slot + 1)){
+            var f = solution.getPendingFacility(slot);
+            // Fake facilities with the same width are interchangeable: only the first one is evaluated,
+            // its moves represent every pending fake facility of its width
+            int multiplicity = 1;
+            if(f.fake){
+                Integer count = fakeCounts.remove(f.width);
+                if(count == null){
+                    continue;
+                }
+                multiplicity = count;
+            }
             for (int rowIndex = 0; rowIndex < nRows; rowIndex++) {
+                InsertionProfiler.profile(solution, rowIndex, f, costs);
                 // Iterate backwards so it matches InsertBySwap order
                 //for (int j = 0; j <= solution.getRowSize(rowIndex); j++) {
                 for (int j = solution.getRowSize(rowIndex); j >= 0; j--) {
-                    var move = new DRFPAddMove(solution, rowIndex, j, f);
+                    assert costs[j] == FixedPoint.toFixed(solution.insertCost(rowIndex, j, f));
+                    var move = new DRFPAddMove(solution, rowIndex, j, f, FixedPoint.toDouble(costs[j]), multiplicity);
                     list.add(move);
                 }
             }
@@ -34,6 +54,25 @@ public class DRFPListManager extends GRASPListManager<DRFPAddMove, DRFLPSolution
         return list;
     }
 
+    /**
+     * Number of pending fake facilities of each width
+     */
+    static Map<Double, Integer> pendingFakeCounts(DRFLPSolution solution) {
+        var counts = new HashMap<Double, Integer>();
+        for(var entry: solution.getFakeFacilities().entrySet()){
+            int count = 0;
+            for(var f: entry.getValue()){
+                if(solution.isPending(f.id)){
+                    count++;
+                }
+            }
+            if(count > 0){
+                counts.put(entry.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
     /**
      * Update candidate list after each movement. The list will be sorted by the constructor.
      * @param solution Current solution, move has been already applied
@@ -44,8 +83,8 @@ public class DRFPListManager extends GRASPListManager<DRFPAddMove, DRFLPSolution
      */
     @Override
     public List<DRFPAddMove> updateCandidateList(DRFLPSolution solution, DRFPAddMove move, List<DRFPAddMove> candidateList, int index) {
-        // List can be partially updated / modified
-        // recalculating from scratch is an ok start and can be optimized latter if necessary
+        // Placing a facility shifts the rest of its row, which changes the insertion costs of every pending facility
+        // with a partner in the shifted part, in every row and position: recalculating from scratch costs the same
         return buildInitialCandidateList(solution);
     }
 
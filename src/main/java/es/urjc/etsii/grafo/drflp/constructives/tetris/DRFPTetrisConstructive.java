@@ -3,12 +3,8 @@ package es.urjc.etsii.grafo.drflp.constructives.tetris;
 import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
 import es.urjc.etsii.grafo.solver.create.Reconstructive;
-import es.urjc.etsii.grafo.util.CollectionUtil;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -17,6 +13,8 @@ import java.util.logging.Logger;
 public class DRFPTetrisConstructive extends Reconstructive<DRFLPSolution, DRFLPInstance> {
 
     private static final Logger log = Logger.getLogger(DRFPTetrisConstructive.class.getName());
+    // Width of the fake facilities, the only one supported
+    private static final double FAKE_WIDTH = 0.5;
     private final double[] widths;
     private final double alpha;
 
@@ -40,23 +38,24 @@ public class DRFPTetrisConstructive extends Reconstructive<DRFLPSolution, DRFLPI
             return solution;
         }
 
+        // Candidates are kept between rounds, each merge only evaluates the pairs of the new piece
+        var candidates = new MergeCandidates(instance, notJoined, FAKE_WIDTH);
         while(notJoined.size()>1){
-            var moves = generateMoves(instance, notJoined, 0.5); // todo: 0.5 is hardcoded, avoid magic numbers
-            // Cogemos el primero porque tamos minimizando
-
-            var m = choose(moves);
+            var m = candidates.choose(this.alpha);
             notJoined.remove(m.a());
             notJoined.remove(m.b());
-            notJoined.add(m);
+            notJoined.add(m.merged());
+            candidates.merge(m);
         }
 
         // Construct solution using the matrix data
         assert notJoined.size() == 1;
         var e = (Piece) notJoined.toArray()[0];
         notJoined.clear();
-        for (int i = 0; i < e.data().length; i++) {
-            for (int j = 0; j < e.data()[i].length; j++) {
-                solution.insertLast(i, instance.byId(e.data()[i][j]));
+        var data = e.data();
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < data[i].length; j++) {
+                solution.insertLast(i, instance.byId(data[i][j]));
             }
         }
         solution.rebuildCaches();
@@ -72,84 +71,26 @@ public class DRFPTetrisConstructive extends Reconstructive<DRFLPSolution, DRFLPI
     public DRFLPSolution construct(DRFLPSolution solution) {
         solution.addFakeFacilities(this.widths);
         for(var d: widths){
-            assert DoubleComparator.equals(d, 0.5D);
+            assert DoubleComparator.equals(d, FAKE_WIDTH);
         }
-        var facilities = new ArrayList<>(solution.getNotAssignedFacilities());
         int nrows = solution.getInstance().getNRows();
 
         if(nrows != 2){
             throw new IllegalArgumentException("Tetris constructive has only been tested for the DRFLP, not in MRFLP");
         }
         var notJoined = solution.getPendingPieces();
-        for (var f: facilities) {
-            var p = new Piece(new int[][]{
+        for (int slot = solution.nextPendingSlot(0); slot >= 0; slot = solution.nextPendingSlot(slot + 1)) {
+            var f = solution.getPendingFacility(slot);
+            var p = new Piece(solution.getInstance(), FAKE_WIDTH, new int[][]{
                     {f.id},
                     {}
-            }, 0, null, null);
+            }, 0);
             notJoined.add(p);
         }
 
         return reconstruct(solution);
     }
 
-    private Piece choose(List<Piece> moves) {
-        moves.sort(Comparator.comparing(Piece::increment));
-        var candidates = new ArrayList<Piece>();
-        double min = moves.get(0).increment();
-        double max = moves.get(moves.size() - 1).increment();
-        double umbral = min + (max - min) * alpha;
-        for(var m: moves){
-            if (DoubleComparator.isLessOrEquals(m.increment(), umbral)) {
-                candidates.add(m);
-            } else {
-                break;
-            }
-        }
-        return CollectionUtil.pickRandom(candidates);
-    }
-
-    private List<Piece> generateMoves(DRFLPInstance instance, List<Piece> notJoined, double fakeWidth) {
-        var candidates = new ArrayList<>(notJoined);
-        var next = new ArrayList<Piece>();
-        for (int i = 0; i < candidates.size() - 1; i++) {
-            var a = candidates.get(i);
-            for (int j = i+1; j < candidates.size(); j++) {
-                var b = candidates.get(j);
-
-                // AB
-                var data = doMerge(a.data()[0], a.data()[1], b.data()[0], b.data()[1]);
-                next.add(new Piece(data, DRFLPSolution.evaluate(instance, data, fakeWidth),a,b));
-
-                // BA
-                data = doMerge(b.data()[0], b.data()[1], a.data()[0], a.data()[1]);
-                next.add(new Piece(data, DRFLPSolution.evaluate(instance, data, fakeWidth),a,b));
-
-                // ∀B
-                data = doMerge(a.data()[1], a.data()[0], b.data()[0], b.data()[1]);
-                next.add(new Piece(data, DRFLPSolution.evaluate(instance, data, fakeWidth),a,b));
-
-                // B∀  // todo review possible optimization: if starting (ie very small pieces) this may repeat moves
-                data = doMerge(b.data()[0], b.data()[1], a.data()[1], a.data()[0]);
-                next.add(new Piece(data, DRFLPSolution.evaluate(instance, data, fakeWidth),a,b));
-            }
-        }
-        return next;
-    }
-
-    private int[][] doMerge(int[] a_r1, int[] a_r2, int[] b_r1, int[] b_r2){
-        int[][] result = new int[][]{
-                new int[a_r1.length + b_r1.length],
-                new int[a_r2.length + b_r2.length]
-        };
-        System.arraycopy(a_r1, 0, result[0], 0, a_r1.length);
-        System.arraycopy(b_r1, 0, result[0], a_r1.length, b_r1.length);
-
-        System.arraycopy(a_r2, 0, result[1], 0, a_r2.length);
-        System.arraycopy(b_r2, 0, result[1], a_r2.length, b_r2.length);
-        return result;
-    }
-
-
     /*
     static class UnionFind {
         private final Piece[] data;
@@ -0,0 +1,348 @@
+package es.urjc.etsii.grafo.drflp.constructives.tetris;
+
+import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
+import es.urjc.etsii.grafo.drflp.model.DRFLPSolution;
+import es.urjc.etsii.grafo.drflp.model.FixedPoint;
+import es.urjc.etsii.grafo.util.CollectionUtil;
+import es.urjc.etsii.grafo.util.DoubleComparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Merge candidates of the tetris constructive, kept between merge rounds. Each pair of pieces can be merged in 4 orientations.
+ * When two pieces are merged, only the candidates that use any of them are removed, and the candidates of the new piece
+ * are evaluated, instead of evaluating every pair again. Candidates are sorted by increment, so the restricted candidate list
+ * is a prefix of the sorted set. Ties are broken by the order in which the pieces were added and the orientation,
+ * which is the order in which all the candidates were generated before.
+ * The facilities of the right piece are displaced by the width of the row of the left piece where they end, so the increment
+ * of a candidate is the cost between the facilities of both pieces, plus the change in the cost between the two rows
+ * of the right piece when they are displaced by different widths. Both are calculated from the centers of each piece,
+ * and the merged piece is only built for the chosen candidate, joining the rows of both pieces in O(1).
+ */
+final class MergeCandidates {
+
+    private static final Comparator<Candidate> ORDER = Comparator.comparingDouble(Candidate::increment)
+            .thenComparingInt(Candidate::first)
+            .thenComparingInt(Candidate::second)
+            .thenComparingInt(Candidate::orientation);
+
+    private final DRFLPInstance instance;
+    private final double fakeWidth;
+    private final long fixedFakeWidth;
+    private final TreeSet<Candidate> candidates = new TreeSet<>(ORDER);
+    // Pieces not merged yet, in the order in which they were added. Merged pieces are not referenced anymore.
+    private final IdentityHashMap<Piece, Node> nodes = new IdentityHashMap<>();
+    private final List<Node> alive = new ArrayList<>();
+    private int nextSequence = 0;
+
+    /**
+     * Piece not merged yet, with its real facilities and their centers, in fixed point units, and its candidates
+     */
+    private static final class Node {
+        private final Piece piece;
+        private final int sequence;
+        private final long cost;
+        private final int[][] realIds;
+        private final long[][] centers;
+        private final Set<Candidate> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Pairs between both rows, sorted by the center of the second row minus the center of the first row,
+        // with prefix sums of weights and weighted offsets. Built the first time the piece is placed on the right.
+        private long[] offsets;
+        private long[] prefixWeights;
+        private long[] prefixMoments;
+
+        private Node(DRFLPInstance instance, Piece piece, int sequence, long fixedFakeWidth) {
+            this.piece = piece;
+            this.sequence = sequence;
+            this.cost = FixedPoint.toFixed(piece.cost());
+            var data = piece.data();
+            this.realIds = new int[data.length][];
+            this.centers = new long[data.length][];
+            for (int row = 0; row < data.length; row++) {
+                var ids = new int[data[row].length];
+                var rowCenters = new long[data[row].length];
+                int count = 0;
+                long leftDistance = 0;
+                for (int id : data[row]) {
+                    // Fake facilities only displace the following facilities
+                    if (id < 0) {
+                        leftDistance += fixedFakeWidth;
+                        continue;
+                    }
+                    long width = instance.getFixedWidth(id);
+                    ids[count] = id;
+                    rowCenters[count] = leftDistance + width / 2;
+                    count++;
+                    leftDistance += width;
+                }
+                this.realIds[row] = Arrays.copyOf(ids, count);
+                this.centers[row] = Arrays.copyOf(rowCenters, count);
+                assert leftDistance == rowWidth(row);
+            }
+        }
+
+        /**
+         * Node of the piece made by placing right after left, from the facilities and centers of both
+         */
+        private Node(Piece piece, int sequence, Node left, boolean flipLeft, Node right, boolean flipRight) {
+            this.piece = piece;
+            this.sequence = sequence;
+            this.cost = FixedPoint.toFixed(piece.cost());
+            int nRows = left.realIds.length;
+            this.realIds = new int[nRows][];
+            this.centers = new long[nRows][];
+            for (int row = 0; row < nRows; row++) {
+                int leftRow = flipLeft ? 1 - row : row;
+                int rightRow = flipRight ? 1 - row : row;
+                var leftIds = left.realIds[leftRow];
+                var rightIds = right.realIds[rightRow];
+                var ids = Arrays.copyOf(leftIds, leftIds.length + rightIds.length);
+                System.arraycopy(rightIds, 0, ids, leftIds.length, rightIds.length);
+                var rowCenters = Arrays.copyOf(left.centers[leftRow], ids.length);
+                long shift = left.rowWidth(leftRow);
+                for (int j = 0; j < rightIds.length; j++) {
+                    rowCenters[leftIds.length + j] = right.centers[rightRow][j] + shift;
+                }
+                this.realIds[row] = ids;
+                this.centers[row] = rowCenters;
+            }
+        }
+
+        /**
+         * Width of the given row of the piece, in fixed point units
+         */
+        private long rowWidth(int row) {
+            return piece.rows()[row].width();
+        }
+
+        /**
+         * Change in the cost between both rows when the first row is displaced d units more than the second one.
+         * The cost is a sum of w * |d - offset| over the pairs, evaluated in O(log m) with the prefix sums.
+         */
+        private long rowShiftCost(DRFLPInstance instance, long d) {
+            if (d == 0) {
+                return 0;
+            }
+            if (offsets == null) {
+                buildOffsets(instance);
+            }
+            return rowCost(d) - rowCost(0);
+        }
+
+        private long rowCost(long d) {
+            int m = offsets.length;
+            // Number of pairs with offset <= d
+            int low = 0, high = m;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (offsets[mid] <= d) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            long leftWeight = prefixWeights[low], leftMoment = prefixMoments[low];
+            return d * leftWeight - leftMoment + (prefixMoments[m] - leftMoment) - d * (prefixWeights[m] - leftWeight);
+        }
+
+        private void buildOffsets(DRFLPInstance instance) {
+            var pairOffsets = new long[realIds[0].length * realIds[1].length];
+            var pairWeights = new int[pairOffsets.length];
+            int m = 0;
+            for (int i = 0; i < realIds[0].length; i++) {
+                for (int j = 0; j < realIds[1].length; j++) {
+                    int w = instance.getWeight(realIds[0][i], realIds[1][j]);
+                    if (w != 0) {
+                        pairOffsets[m] = centers[1][j] - centers[0][i];
+                        pairWeights[m] = w;
+                        m++;
+                    }
+                }
+            }
+            this.offsets = Arrays.copyOf(pairOffsets, m);
+            Arrays.sort(this.offsets);
+            // Weight of each sorted offset. Pairs with the same offset may add their weight to any of its copies,
+            // rowCost only reads the prefix sums after the last copy of an offset
+            var sortedWeights = new long[m];
+            for (int k = 0; k < m; k++) {
+                sortedWeights[Arrays.binarySearch(this.offsets, pairOffsets[k])] += pairWeights[k];
+            }
+            this.prefixWeights = new long[m + 1];
+            this.prefixMoments = new long[m + 1];
+            for (int k = 0; k < m; k++) {
+                prefixWeights[k + 1] = prefixWeights[k] + sortedWeights[k];
+                prefixMoments[k + 1] = prefixMoments[k] + sortedWeights[k] * offsets[k];
+            }
+        }
+    }
+
+    /**
+     * Merge of the pieces a and b, in the given orientation: 0 AB, 1 BA, 2 ∀B, 3 B∀.
+     * Cost of the merged piece in fixed point units, increment is the cost of the merged piece minus the cost of both pieces.
+     */
+    private record Candidate(Node a, Node b, double increment, long cost, int orientation) {
+        int first() {
+            return a.sequence;
+        }
+
+        int second() {
+            return b.sequence;
+        }
+
+        Node left() {
+            return orientation == 1 || orientation == 3 ? b : a;
+        }
+
+        Node right() {
+            return orientation == 1 || orientation == 3 ? a : b;
+        }
+
+        boolean flipLeft() {
+            return orientation == 2;
+        }
+
+        boolean flipRight() {
+            return orientation == 3;
+        }
+    }
+
+    /**
+     * Chosen merge, the pieces a and b must be replaced with the merged one
+     */
+    record Merge(Piece a, Piece b, Piece merged, int orientation) {}
+
+    /**
+     * Evaluate all the candidates of the given pieces, O(p²) evaluations
+     * @param instance instance
+     * @param pieces pieces not merged yet, in order
+     * @param fakeWidth width of the fake facilities
+     */
+    MergeCandidates(DRFLPInstance instance, List<Piece> pieces, double fakeWidth) {
+        this.instance = instance;
+        this.fakeWidth = fakeWidth;
+        this.fixedFakeWidth = FixedPoint.width(fakeWidth);
+        for (var piece : pieces) {
+            add(piece);
+        }
+    }
+
+    /**
+     * Choose a random candidate from the restricted candidate list, and build its merged piece
+     * @param alpha 0 to choose between the best ones, 1 to choose between all of them
+     * @return chosen merge
+     */
+    Merge choose(double alpha) {
+        double min = candidates.first().increment();
+        double max = candidates.last().increment();
+        double umbral = min + (max - min) * alpha;
+        var rcl = new ArrayList<Candidate>();
+        for (var c : candidates) {
+            if (DoubleComparator.isLessOrEquals(c.increment(), umbral)) {
+                rcl.add(c);
+            } else {
+                break;
+            }
+        }
+        return build(CollectionUtil.pickRandom(rcl));
+    }
+
+    /**
+     * Replace the pieces used by the given merge with the merged piece
+     * @param merge merge returned by choose
+     */
+    void merge(Merge merge) {
+        var a = remove(merge.a());
+        var b = remove(merge.b());
+        // Any candidate with the same pieces and orientation describes the merged piece
+        var c = new Candidate(a, b, 0, 0, merge.orientation());
+        add(new Node(merge.merged(), nextSequence++, c.left(), c.flipLeft(), c.right(), c.flipRight()));
+    }
+
+    private Node remove(Piece piece) {
+        var node = nodes.remove(piece);
+        for (var c : node.candidates) {
+            candidates.remove(c);
+            (c.a() == node ? c.b() : c.a()).candidates.remove(c);
+        }
+        alive.remove(node);
+        return node;
+    }
+
+    private void add(Piece piece) {
+        add(new Node(instance, piece, nextSequence++, fixedFakeWidth));
+    }
+
+    private void add(Node node) {
+        for (var other : alive) {
+            // Flipping the left piece only changes which of its rows displaces each row of the right piece
+            add(other, node, increment(other, false, node, false), 0);  // AB
+            add(other, node, increment(node, false, other, false), 1);  // BA
+            add(other, node, increment(other, true, node, false), 2);   // ∀B
+            add(other, node, increment(node, false, other, true), 3);   // B∀
+        }
+        nodes.put(node.piece, node);
+        alive.add(node);
+    }
+
+    private void add(Node a, Node b, long cross, int orientation) {
+        long cost = a.cost + b.cost + cross;
+        // Subtract the costs as doubles, like the increment of the full evaluation, so ties are the same
+        double increment = FixedPoint.toDouble(cost) - a.piece.cost() - b.piece.cost();
+        var c = new Candidate(a, b, increment, cost, orientation);
+        candidates.add(c);
+        a.candidates.add(c);
+        b.candidates.add(c);
+    }
+
+    /**
+     * Cost change of placing right after left: cost between the facilities of both pieces, O(|left| * |right|),
+     * and change in the cost between the rows of right, O(log |right|²)
+     * @return cost change in fixed point units
+     */
+    private long increment(Node left, boolean flipLeft, Node right, boolean flipRight) {
+        // Displacement of each row of right
+        long shift0 = left.rowWidth(flipLeft != flipRight ? 1 : 0);
+        long shift1 = left.rowWidth(flipLeft != flipRight ? 0 : 1);
+        long total = right.rowShiftCost(instance, shift0 - shift1);
+        for (int rightRow = 0; rightRow < right.realIds.length; rightRow++) {
+            var rightIds = right.realIds[rightRow];
+            var rightCenters = right.centers[rightRow];
+            long shift = rightRow == 0 ? shift0 : shift1;
+            for (int leftRow = 0; leftRow < left.realIds.length; leftRow++) {
+                var leftIds = left.realIds[leftRow];
+                var leftCenters = left.centers[leftRow];
+                for (int i = 0; i < leftIds.length; i++) {
+                    int id = leftIds[i];
+                    long center = leftCenters[i] - shift;
+                    for (int j = 0; j < rightIds.length; j++) {
+                        int w = instance.getWeight(id, rightIds[j]);
+                        if (w != 0) {
+                            total += Math.abs(rightCenters[j] - center) * w;
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private Merge build(Candidate c) {
+        var left = c.left().piece.rows();
+        var right = c.right().piece.rows();
+        var rows = new PieceRow[left.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = PieceRow.concat(left[c.flipLeft() ? 1 - row : row], right[c.flipRight() ? 1 - row : row]);
+        }
+        var merged = new Piece(rows, FixedPoint.toDouble(c.cost()));
+        assert DoubleComparator.equals(merged.cost(), DRFLPSolution.evaluate(instance, merged.data(), fakeWidth));
+        return new Merge(c.a().piece, c.b().piece, merged, c.orientation());
+    }
+}
@@ -1,22 +1,46 @@
 package es.urjc.etsii.grafo.drflp.constructives.tetris;
 
-import java.util.Arrays;
+import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
 
 /**
- * Solution fragment, used in the tetris constructive
+ * Solution fragment, used in the tetris constructive.
+ * Does not keep the pieces it was merged from, so they can be collected once the merge is done.
  */
-public record Piece(int[][] data, double cost, Piece a, Piece b) {
-    public double increment(){
-        return this.cost - a.cost - b.cost;
+public record Piece(PieceRow[] rows, double cost) {
+
+    /**
+     * Create a piece with the given facility ids in each row
+     * @param instance instance the facilities belong to
+     * @param fakeWidth width of the fake facilities
+     */
+    public Piece(DRFLPInstance instance, double fakeWidth, int[][] data, double cost) {
+        this(toRows(instance, fakeWidth, data), cost);
+    }
+
+    private static PieceRow[] toRows(DRFLPInstance instance, double fakeWidth, int[][] data) {
+        var rows = new PieceRow[data.length];
+        for (int i = 0; i < data.length; i++) {
+            rows[i] = PieceRow.of(instance, fakeWidth, data[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Facility ids of each row, O(size of the piece)
+     */
+    public int[][] data() {
+        var data = new int[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            data[i] = rows[i].toArray();
+        }
+        return data;
     }
 
     @Override
     public String toString() {
         return "Piece{" +
-                String.format("d0=%s;d1=%s", Arrays.toString(data[0]), Arrays.toString(data[1])) +
+                String.format("d0=%s;d1=%s", rows[0], rows[1]) +
                 ", c=" + cost +
-                ", a=" + a +
-                ", b=" + b +
                 '}';
     }
 }
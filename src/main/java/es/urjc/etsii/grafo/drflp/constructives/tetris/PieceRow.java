@@ -0,0 +1,105 @@
+package es.urjc.etsii.grafo.drflp.constructives.tetris;
+
+import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
+import es.urjc.etsii.grafo.drflp.model.FixedPoint;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Immutable sequence of facility ids of a row of a piece, stored as a concatenation tree,
+ * so joining two rows is O(1) and shares the facilities of both. Each node caches its length and width.
+ * Flattened once the piece is complete.
+ */
+public final class PieceRow {
+
+    private static final PieceRow EMPTY = new PieceRow(new int[0], null, null, 0, 0);
+
+    // Leaf ids, or null if this row is the concatenation of left and right
+    private final int[] ids;
+    private final PieceRow left;
+    private final PieceRow right;
+    private final int length;
+    private final long width;
+
+    private PieceRow(int[] ids, PieceRow left, PieceRow right, int length, long width) {
+        this.ids = ids;
+        this.left = left;
+        this.right = right;
+        this.length = length;
+        this.width = width;
+    }
+
+    /**
+     * Create a row with the given facilities
+     * @param instance instance the facilities belong to
+     * @param fakeWidth width of the fake facilities
+     * @param ids facility ids, in order. The array is copied.
+     * @return row
+     */
+    public static PieceRow of(DRFLPInstance instance, double fakeWidth, int... ids) {
+        if (ids.length == 0) {
+            return EMPTY;
+        }
+        long width = 0;
+        for (int id : ids) {
+            width += id < 0 ? FixedPoint.width(fakeWidth) : instance.getFixedWidth(id);
+        }
+        return new PieceRow(ids.clone(), null, null, ids.length, width);
+    }
+
+    /**
+     * Row with the facilities of left followed by the facilities of right, in O(1)
+     */
+    public static PieceRow concat(PieceRow left, PieceRow right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        return new PieceRow(null, left, right, left.length + right.length, left.width + right.width);
+    }
+
+    /**
+     * Number of facilities in this row
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Total width of the facilities in this row, in fixed point units
+     * @see FixedPoint
+     */
+    public long width() {
+        return width;
+    }
+
+    /**
+     * Facility ids of this row, in order, O(length)
+     */
+    public int[] toArray() {
+        var result = new int[length];
+        int from = 0;
+        // Explicit stack of the right sides still to copy, trees built by repeated merges may be as deep as their length
+        var pending = new ArrayDeque<PieceRow>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            var row = pending.pop();
+            while (row.ids == null) {
+                pending.push(row.right);
+                row = row.left;
+            }
+            System.arraycopy(row.ids, 0, result, from, row.ids.length);
+            from += row.ids.length;
+        }
+        assert from == length;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
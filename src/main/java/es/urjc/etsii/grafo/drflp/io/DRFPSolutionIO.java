@@ -25,17 +25,14 @@ public class DRFPSolutionIO extends SolutionSerializer<DRFLPSolution, DRFLPInsta
 
     @Override
     public void export(BufferedWriter writer, DRFLPSolution solution) throws IOException {
-        var data = solution.getSolutionData();
         StringBuilder sb = new StringBuilder();
-        for(var row: data){
-            for(var f: row){
-                if(f == null){
-                    continue;
-                }
-                if(f.facility.fake){
-                    sb.append(-f.facility.width);
+        for (int row = 0; row < solution.getNRows(); row++) {
+            for (int index = 0; index < solution.getRowSize(row); index++) {
+                var f = solution.getFacility(row, index);
+                if(f.fake){
+                    sb.append(-f.width);
                 } else {
-                    sb.append(f.facility.id);
+                    sb.append(f.id);
                 }
                 sb.append(" ");
             }
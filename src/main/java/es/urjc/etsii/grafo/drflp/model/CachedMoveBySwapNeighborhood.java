@@ -0,0 +1,115 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import es.urjc.etsii.grafo.solution.neighborhood.EagerNeighborhood;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Move by swap neighborhood for best improvement local searches. Only the best move of each sweep is returned,
+ * and it is cached in the solution, so after a move only the sweeps over rows affected by it are evaluated again,
+ * see SweepCache. Sweeps are visited in the same order as MoveBySwapNeighborhood, and the first best move of each sweep
+ * is kept, so the best move of the neighborhood is the same.
+ * If don't look bits are enabled, facilities without improving moves are skipped until their center or the center
+ * of any of their partners moves, so the local search may stop before reaching a local optimum of the full neighborhood.
+ * Only sparse instances use the cache and the don't look bits: on dense instances every facility is a partner of every
+ * other one, so any move of a real facility would invalidate every sweep, and each sweep is evaluated again instead.
+ */
+public class CachedMoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighborhood.MoveBySwap, DRFLPSolution, DRFLPInstance> {
+
+    private final boolean dontLookBits;
+    private final Granularity granularity;
+
+    /**
+     * Create a new cached neighborhood
+     * @param dontLookBits true to skip facilities without improving moves until their surroundings change
+     */
+    public CachedMoveBySwapNeighborhood(boolean dontLookBits) {
+        this(dontLookBits, null);
+    }
+
+    /**
+     * Create a new cached granular neighborhood
+     * @param dontLookBits true to skip facilities without improving moves until their surroundings change
+     * @param granularity destinations to evaluate for each facility, null to evaluate all of them
+     */
+    public CachedMoveBySwapNeighborhood(boolean dontLookBits, Granularity granularity) {
+        this.dontLookBits = dontLookBits;
+        this.granularity = granularity;
+    }
+
+    @Override
+    public List<MoveBySwapNeighborhood.MoveBySwap> getMovements(DRFLPSolution solution) {
+        if (!solution.getInstance().isSparse()) {
+            return uncachedMovements(solution);
+        }
+        var cache = solution.sweepCache();
+        cache.refresh(solution);
+
+        var moves = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
+        var sweep = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
+        for (int row = 0; row < solution.getNRows(); row++) {
+            for (int position = 0; position < solution.getRowSize(row); position++) {
+                int slot = solution.slot(solution.ids[row][position]);
+                if (MoveBySwapNeighborhood.redundantPosition(solution, row, position) || dontLookBits && !cache.look(slot)) {
+                    continue;
+                }
+                boolean improves = false;
+                for (int step = 0; step < solution.getNRows(); step++) {
+                    int target = MoveBySwapNeighborhood.sweepRow(row, step);
+                    if (!cache.isValid(row, position, step, target)) {
+                        sweep.clear();
+                        MoveBySwapNeighborhood.generateSweepMoves(sweep, solution, row, position, target, granularity);
+                        cache.put(row, position, step, target, best(sweep));
+                    }
+                    var best = cache.get(row, position, step);
+                    if (best != null) {
+                        moves.add(best);
+                        improves |= best.improves();
+                    }
+                }
+                if (!improves) {
+                    cache.dontLook(slot);
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Best move of each sweep, without using the cache
+     */
+    private List<MoveBySwapNeighborhood.MoveBySwap> uncachedMovements(DRFLPSolution solution) {
+        var moves = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
+        var sweep = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
+        for (int row = 0; row < solution.getNRows(); row++) {
+            for (int position = 0; position < solution.getRowSize(row); position++) {
+                if (MoveBySwapNeighborhood.redundantPosition(solution, row, position)) {
+                    continue;
+                }
+                for (int step = 0; step < solution.getNRows(); step++) {
+                    sweep.clear();
+                    MoveBySwapNeighborhood.generateSweepMoves(sweep, solution, row, position, MoveBySwapNeighborhood.sweepRow(row, step), granularity);
+                    var best = best(sweep);
+                    if (best != null) {
+                        moves.add(best);
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * First move with the minimum value, null if there are no moves
+     */
+    private static MoveBySwapNeighborhood.MoveBySwap best(List<MoveBySwapNeighborhood.MoveBySwap> moves) {
+        MoveBySwapNeighborhood.MoveBySwap best = null;
+        for (var move : moves) {
+            if (best == null || move.getValue() < best.getValue()) {
+                best = move;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,115 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import java.util.Arrays;
+
+/**
+ * Cost of a facility against all the real facilities of another row, as a function of its own center.
+ * For a fixed row the cost sum(w_fg * |x - c_g|) is convex piecewise-linear with breakpoints at the centers of the row,
+ * so it is stored as prefix sums of weights and weighted centers, and evaluated in O(log n) with a binary search.
+ * Profiles are built on demand in O(n) and reused while the row keeps the same contents. Each time the version of a row
+ * changes, see DRFLPSolution.rowVersion, its real facilities and centers are compared with the ones of the last check in O(n),
+ * so restoring a row after a temporary move keeps its profiles valid. All values are in fixed point units.
+ */
+final class CrossRowProfiles {
+
+    // Row * Facility id: sum of weights and sum of weight * center of the first k real facilities of the row
+    private final long[][][] weightPrefix;
+    private final long[][][] momentPrefix;
+    // Row * Facility id: contents of the row when the profile was built
+    private final int[][] builtContents;
+
+    // Rows: version of the row when it was last checked, its real facilities and centers at that time,
+    // and number of times its contents have changed
+    private final long[] checkedVersions;
+    private final int[][] checkedIds;
+    private final long[][] checkedCenters;
+    private final int[] checkedCounts;
+    private final int[] contents;
+
+    CrossRowProfiles(int nRows, int nRealFacilities) {
+        this.weightPrefix = new long[nRows][nRealFacilities][];
+        this.momentPrefix = new long[nRows][nRealFacilities][];
+        this.builtContents = new int[nRows][nRealFacilities];
+        this.checkedVersions = new long[nRows];
+        Arrays.fill(this.checkedVersions, -1);
+        this.checkedIds = new int[nRows][nRealFacilities];
+        this.checkedCenters = new long[nRows][nRealFacilities];
+        this.checkedCounts = new int[nRows];
+        this.contents = new int[nRows];
+    }
+
+    /**
+     * Cost between the given real facility, placed at center, and every real facility in the given row.
+     * @param solution current solution
+     * @param row row to evaluate against, must not contain the facility
+     * @param id real facility id
+     * @param center center of the facility in fixed point units
+     * @return cost in fixed point units
+     */
+    long cost(DRFLPSolution solution, int row, int id, long center) {
+        int m = solution.realCount[row];
+        var rowCenters = solution.realCenters[row];
+        if (this.checkedVersions[row] != solution.rowVersion[row]) {
+            check(solution, row);
+        }
+        if (this.weightPrefix[row][id] == null || this.builtContents[row][id] != this.contents[row]) {
+            build(solution, row, id);
+        }
+        var weights = this.weightPrefix[row][id];
+        var moments = this.momentPrefix[row][id];
+
+        // Number of facilities in the row to the left of center
+        int low = 0, high = m;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rowCenters[mid] <= center) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        long leftCost = center * weights[low] - moments[low];
+        long rightCost = (moments[m] - moments[low]) - center * (weights[m] - weights[low]);
+        return leftCost + rightCost;
+    }
+
+    private void build(DRFLPSolution solution, int row, int id) {
+        int m = solution.realCount[row];
+        var rowIds = solution.realIds[row];
+        var rowCenters = solution.realCenters[row];
+        var weights = this.weightPrefix[row][id];
+        var moments = this.momentPrefix[row][id];
+        if (weights == null || weights.length < m + 1) {
+            weights = this.weightPrefix[row][id] = new long[m + 1];
+            moments = this.momentPrefix[row][id] = new long[m + 1];
+        }
+
+        var matrix = solution.getInstance().weights();
+        int offset = matrix.rowOffset(id);
+        for (int k = 0; k < m; k++) {
+            long w = matrix.get(offset + rowIds[k]);
+            weights[k + 1] = weights[k] + w;
+            moments[k + 1] = moments[k] + w * rowCenters[k];
+        }
+        this.builtContents[row][id] = this.contents[row];
+    }
+
+    /**
+     * Compare the real facilities and centers of the given row with the ones of the last check, O(n)
+     */
+    private void check(DRFLPSolution solution, int row) {
+        this.checkedVersions[row] = solution.rowVersion[row];
+        int m = solution.realCount[row];
+        var rowIds = solution.realIds[row];
+        var rowCenters = solution.realCenters[row];
+        if (m == this.checkedCounts[row]
+                && Arrays.equals(rowIds, 0, m, this.checkedIds[row], 0, m)
+                && Arrays.equals(rowCenters, 0, m, this.checkedCenters[row], 0, m)) {
+            return;
+        }
+        System.arraycopy(rowIds, 0, this.checkedIds[row], 0, m);
+        System.arraycopy(rowCenters, 0, this.checkedCenters[row], 0, m);
+        this.checkedCounts[row] = m;
+        this.contents[row]++;
+    }
+}
@@ -7,10 +7,20 @@ import java.util.Objects;
 
 public abstract class DRFLPBaseMove extends LazyMove<DRFLPSolution, DRFLPInstance> {
 
+    /**
+     * Score of moves that are evaluated the first time their value is requested
+     */
+    static final double NOT_EVALUATED = Double.NaN;
+
      final int index1;
      final int index2;
-     final double score;
+     double score;
 
+    /**
+     * Create a new move
+     * @param score score change, or NOT_EVALUATED to calculate it with evaluate() when it is first needed.
+     *              Lazy moves must be evaluated, or executed, before the solution is modified.
+     */
     public DRFLPBaseMove(DRFLPSolution s, int index1, int index2, double score) {
         super(s);
         this.index1 = index1;
@@ -18,10 +28,15 @@ public abstract class DRFLPBaseMove extends LazyMove<DRFLPSolution, DRFLPInstanc
         this.score = score;
     }
 
+    /**
+     * Calculate the score change of this move, used by lazy moves when their value is first requested
+     */
+    protected abstract double evaluate();
+
     @Override
     public boolean improves() {
         // Improves solution if score is strictly negative
-        return DoubleComparator.isNegative(score);
+        return DoubleComparator.isNegative(getValue());
     }
 
     @Override
@@ -31,6 +46,9 @@ public abstract class DRFLPBaseMove extends LazyMove<DRFLPSolution, DRFLPInstanc
 
     @Override
     public double getValue() {
+        if (Double.isNaN(this.score)) {
+            this.score = evaluate();
+        }
         return this.score;
     }
 
@@ -39,21 +57,22 @@ public abstract class DRFLPBaseMove extends LazyMove<DRFLPSolution, DRFLPInstanc
         return this.getClass().getSimpleName()+"{" +
                 "i1=" + index1 +
                 ", i2=" + index2 +
-                ", sc=" + score +
+                ", sc=" + (Double.isNaN(score) ? "not evaluated" : score) +
                 '}';
     }
 
+    // The score is determined by the indexes, and lazy moves only know it after being evaluated, so it is not compared
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DRFLPBaseMove that = (DRFLPBaseMove) o;
-        return index1 == that.index1 && index2 == that.index2 && Double.compare(that.score, score) == 0;
+        return index1 == that.index1 && index2 == that.index2;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(index1, index2, score);
+        return Objects.hash(index1, index2);
     }
 
     @Override
@@ -0,0 +1,380 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Calculates the score change of insert, swap and relocation moves using the current facility centers,
+ * without modifying the solution. All calculations are done in fixed point units, so results are exact.
+ * Every move is described as at most two relocated facilities, plus at most two ranges of facilities
+ * that keep their relative order but are displaced by a constant amount.
+ * Relocated facilities are evaluated against every other facility, O(n), or O(degree) in sparse instances.
+ * A displaced range keeps its order with the rest of its row, so its cost change against its own row is obtained
+ * from the cut weights in O(1) per displaced facility. Against the other rows each displaced facility visits
+ * every facility, or its nonzero weight partners in sparse instances, so a move that displaces k facilities
+ * costs O(n + k * n / rows) in dense instances and O(degree * (k + 1)) in sparse ones, instead of the O(n²) full evaluation.
+ */
+public final class DRFLPDeltaEvaluator {
+
+    private static final int NONE = -1;
+
+    private DRFLPDeltaEvaluator() {}
+
+    /**
+     * Score change if the facility at (row1, index1) is moved to (row2, index2).
+     * If both rows are the same, the facility ends at index2 and the facilities between both positions are displaced,
+     * as in ArrayUtil.deleteAndInsert. If the rows are different, the facility is removed from row1 and inserted in row2
+     * before the facility currently at index2, index2 may be equal to the row size to insert at the end of the row.
+     */
+    public static double moveCost(DRFLPSolution solution, int row1, int index1, int row2, int index2) {
+        var prefix = solution.prefixWidths;
+        long width = solution.width(solution.ids[row1][index1]);
+
+        if (row1 == row2) {
+            if (index1 == index2) {
+                return 0;
+            }
+            if (index1 < index2) {
+                // Facilities between index1 and index2 move left to fill the gap
+                long newCenter = prefix[row1][index2 + 1] - width / 2;
+                return FixedPoint.toDouble(delta(solution, row1, index1, newCenter, NONE, NONE, 0, row1, index1 + 1, index2 + 1, -width, NONE, 0, 0, 0));
+            } else {
+                // Facilities between index2 and index1 move right to make space
+                long newCenter = prefix[row1][index2] + width / 2;
+                return FixedPoint.toDouble(delta(solution, row1, index1, newCenter, NONE, NONE, 0, row1, index2, index1, width, NONE, 0, 0, 0));
+            }
+        }
+
+        int rowSize1 = solution.rowSize[row1];
+        int rowSize2 = solution.rowSize[row2];
+        long newCenter = prefix[row2][index2] + width / 2;
+        return FixedPoint.toDouble(delta(solution, row1, index1, newCenter, NONE, NONE, 0, row1, index1 + 1, rowSize1, -width, row2, index2, rowSize2, width));
+    }
+
+    /**
+     * Score change if the facility at (row1, index1) is moved to (row2, index2).
+     * @see #moveCost(DRFLPSolution, int, int, int, int)
+     */
+    public static double moveCost(DRFLPSolution solution, DRFLPSolution.RowIndex origin, DRFLPSolution.RowIndex destination) {
+        return moveCost(solution, origin.row, origin.index, destination.row, destination.index);
+    }
+
+    /**
+     * Score change if the facilities at (row1, index1) and (row2, index2) exchange their positions.
+     */
+    public static double swapCost(DRFLPSolution solution, int row1, int index1, int row2, int index2) {
+        if (row1 == row2 && index1 == index2) {
+            return 0;
+        }
+        if (row1 == row2 && index1 > index2) {
+            // Normalize so index1 is always the leftmost facility
+            int temp = index1;
+            index1 = index2;
+            index2 = temp;
+        }
+
+        var prefix = solution.prefixWidths;
+        long leftWidth = solution.width(solution.ids[row1][index1]);
+        long rightWidth = solution.width(solution.ids[row2][index2]);
+        long widthDiff = rightWidth - leftWidth;
+
+        if (row1 == row2) {
+            // Left facility ends where right facility ended and viceversa, facilities between them are displaced
+            long newLeftCenter = prefix[row2][index2 + 1] - leftWidth / 2;
+            long newRightCenter = prefix[row1][index1] + rightWidth / 2;
+            return FixedPoint.toDouble(delta(solution, row1, index1, newLeftCenter, row2, index2, newRightCenter, row1, index1 + 1, index2, widthDiff, NONE, 0, 0, 0));
+        }
+
+        long newCenter1 = prefix[row2][index2] + leftWidth / 2;
+        long newCenter2 = prefix[row1][index1] + rightWidth / 2;
+        return FixedPoint.toDouble(delta(solution, row1, index1, newCenter1, row2, index2, newCenter2,
+                row1, index1 + 1, solution.rowSize[row1], widthDiff,
+                row2, index2 + 1, solution.rowSize[row2], -widthDiff
+        ));
+    }
+
+    /**
+     * Score change if the facilities at the given positions exchange their positions.
+     * @see #swapCost(DRFLPSolution, int, int, int, int)
+     */
+    public static double swapCost(DRFLPSolution solution, DRFLPSolution.RowIndex ri1, DRFLPSolution.RowIndex ri2) {
+        return swapCost(solution, ri1.row, ri1.index, ri2.row, ri2.index);
+    }
+
+    /**
+     * Score change if the facility at (row, index) is removed from the solution.
+     * Facilities to the right of the removed one in the same row are displaced left to fill the gap.
+     */
+    public static double removeCost(DRFLPSolution solution, int row, int index) {
+        return FixedPoint.toDouble(removeFixedCost(solution, row, index));
+    }
+
+    /**
+     * Score change in fixed point units if the facility at (row, index) is removed from the solution.
+     * @see #removeCost(DRFLPSolution, int, int)
+     */
+    static long removeFixedCost(DRFLPSolution solution, int row, int index) {
+        int removed = solution.ids[row][index];
+
+        // Removed facility no longer contributes to the score, fake facilities do not have any weight
+        long delta = 0;
+        if (removed >= 0) {
+            delta -= relocationDelta(solution, removed, solution.centers[row][index], 0, NONE, true);
+        }
+
+        long width = solution.width(removed);
+        int rowSize = solution.rowSize[row];
+        if (index + 1 < rowSize && width != 0) {
+            delta += rangeDelta(solution, removed, NONE, row, index + 1, rowSize, -width, NONE, 0, 0, 0, false);
+        }
+        return delta;
+    }
+
+    /**
+     * Score change in fixed point units if the real facility with the given id is moved to newCenter, while all its
+     * partners except skip keep their centers. If remove is true, returns the current cost of the facility instead.
+     * In sparse instances iterates the nonzero weight partners of the facility, unless there are fewer assigned facilities,
+     * as happens while constructing a solution.
+     */
+    static long relocationDelta(DRFLPSolution solution, int id, long center, long newCenter, int skip, boolean remove) {
+        var instance = solution.getInstance();
+        var start = instance.neighborStart();
+        long delta = 0;
+        if (!instance.isSparse() || start[id + 1] - start[id] > solution.getNAssignedRealFacilities()) {
+            var weights = instance.weights();
+            int offset = weights.rowOffset(id);
+            for (int row = 0; row < solution.realIds.length; row++) {
+                var realIds = solution.realIds[row];
+                var realCenters = solution.realCenters[row];
+                for (int k = 0; k < solution.realCount[row]; k++) {
+                    int other = realIds[k];
+                    if (other == id || other == skip) {
+                        continue;
+                    }
+                    long before = Math.abs(center - realCenters[k]);
+                    delta += (remove ? before : Math.abs(newCenter - realCenters[k]) - before) * weights.get(offset + other);
+                }
+            }
+            return delta;
+        }
+
+        var neighbors = instance.neighbors();
+        var weights = instance.neighborWeights();
+        var facilityRow = solution.facilityRow;
+        var facilityCenter = solution.facilityCenter;
+        for (int e = start[id]; e < start[id + 1]; e++) {
+            int other = neighbors[e];
+            if (facilityRow[other] == DRFLPSolution.UNASSIGNED || other == skip) {
+                continue;
+            }
+            long otherCenter = facilityCenter[other];
+            long before = Math.abs(center - otherCenter);
+            delta += (remove ? before : Math.abs(newCenter - otherCenter) - before) * weights[e];
+        }
+        return delta;
+    }
+
+    /**
+     * Calculate score change for a generic move.
+     * Facilities A and B (B is optional, rowB == NONE) are relocated to the given new centers,
+     * facilities in range [from1, to1) of shiftRow1 are displaced by shift1, and facilities in range [from2, to2) of shiftRow2
+     * are displaced by shift2. Ranges are optional (shiftRow == NONE), and must not overlap.
+     * Only real facilities are visited, fake facilities do not have any weight.
+     */
+    private static long delta(DRFLPSolution solution,
+                              int rowA, int indexA, long newCenterA,
+                              int rowB, int indexB, long newCenterB,
+                              int shiftRow1, int from1, int to1, long shift1,
+                              int shiftRow2, int from2, int to2, long shift2) {
+        var instance = solution.getInstance();
+        long delta = 0;
+
+        // Relocated facilities against every other facility
+        boolean hasB = rowB != NONE;
+        int a = solution.ids[rowA][indexA];
+        long centerA = solution.centers[rowA][indexA];
+        int b = hasB ? solution.ids[rowB][indexB] : NONE;
+        long centerB = hasB ? solution.centers[rowB][indexB] : 0;
+        if (a >= 0) {
+            delta += shiftedRelocationDelta(solution, a, centerA, newCenterA, b, shiftRow1, from1, to1, shift1, shiftRow2, from2, to2, shift2);
+        }
+        if (b >= 0) {
+            delta += shiftedRelocationDelta(solution, b, centerB, newCenterB, a, shiftRow1, from1, to1, shift1, shiftRow2, from2, to2, shift2);
+        }
+        if (a >= 0 && b >= 0) {
+            delta += (Math.abs(newCenterA - newCenterB) - Math.abs(centerA - centerB)) * instance.getWeight(a, b);
+        }
+
+        // Displaced facilities against not displaced ones. Facilities in the same range keep their distances.
+        // Pairs between both ranges are only counted once.
+        boolean firstRange = shiftRow1 != NONE && shift1 != 0;
+        if (firstRange) {
+            delta += rangeDelta(solution, a, b, shiftRow1, from1, to1, shift1, shiftRow2, from2, to2, shift2, true);
+        }
+        if (shiftRow2 != NONE && shift2 != 0) {
+            delta += rangeDelta(solution, a, b, shiftRow2, from2, to2, shift2, shiftRow1, from1, to1, shift1, !firstRange);
+        }
+
+        return delta;
+    }
+
+    private static long shiftedRelocationDelta(DRFLPSolution solution, int id, long center, long newCenter, int skip,
+                                               int shiftRow1, int from1, int to1, long shift1,
+                                               int shiftRow2, int from2, int to2, long shift2) {
+        var instance = solution.getInstance();
+        var realCenters = solution.realCenters;
+        var realPositions = solution.realPositions;
+        long delta = 0;
+        if (!instance.isSparse()) {
+            var weights = instance.weights();
+            int offset = weights.rowOffset(id);
+            for (int row = 0; row < solution.realIds.length; row++) {
+                var realIds = solution.realIds[row];
+                for (int k = 0; k < solution.realCount[row]; k++) {
+                    int other = realIds[k];
+                    if (other == id || other == skip) {
+                        continue;
+                    }
+                    long otherCenter = realCenters[row][k];
+                    long otherNewCenter = otherCenter + shift(row, realPositions[row][k], shiftRow1, from1, to1, shift1, shiftRow2, from2, to2, shift2);
+                    delta += (Math.abs(newCenter - otherNewCenter) - Math.abs(center - otherCenter)) * weights.get(offset + other);
+                }
+            }
+            return delta;
+        }
+
+        var start = instance.neighborStart();
+        var neighbors = instance.neighbors();
+        var weights = instance.neighborWeights();
+        var facilityRow = solution.facilityRow;
+        var facilityRealIndex = solution.facilityRealIndex;
+        for (int e = start[id]; e < start[id + 1]; e++) {
+            int other = neighbors[e];
+            int row = facilityRow[other];
+            if (row == DRFLPSolution.UNASSIGNED || other == skip) {
+                continue;
+            }
+            int k = facilityRealIndex[other];
+            long otherCenter = realCenters[row][k];
+            long otherNewCenter = otherCenter + shift(row, realPositions[row][k], shiftRow1, from1, to1, shift1, shiftRow2, from2, to2, shift2);
+            delta += (Math.abs(newCenter - otherNewCenter) - Math.abs(center - otherCenter)) * weights[e];
+        }
+        return delta;
+    }
+
+    private static long rangeDelta(DRFLPSolution solution, int a, int b,
+                                   int shiftRow, int from, int to, long shift,
+                                   int otherRow, int otherFrom, int otherTo, long otherShift, boolean includeOtherRange) {
+        assert otherRow != shiftRow;
+        var instance = solution.getInstance();
+        var start = instance.neighborStart();
+        var neighbors = instance.neighbors();
+        var weights = instance.neighborWeights();
+        var realIds = solution.realIds;
+        var realCenters = solution.realCenters;
+        var realPositions = solution.realPositions;
+        var facilityRow = solution.facilityRow;
+        var facilityRealIndex = solution.facilityRealIndex;
+        long delta = 0;
+
+        // Same row: the range does not cross any facility, so each pair with a facility outside the range
+        // changes its distance by shift, with positive sign if the facility outside is on the left.
+        // Pairs inside the range cancel out, pairs with the relocated facilities are already counted.
+        int realFrom = solution.realsBefore[shiftRow][from];
+        int realTo = solution.realsBefore[shiftRow][to];
+        int sideA = side(solution, a, shiftRow, from);
+        int sideB = side(solution, b, shiftRow, from);
+        var matrix = instance.weights();
+        long cut = 0;
+        for (int d = realFrom; d < realTo; d++) {
+            int displaced = realIds[shiftRow][d];
+            if (displaced == a || displaced == b) {
+                continue;
+            }
+            cut += 2 * solution.leftWeight[displaced] - solution.rowWeight[displaced];
+            if (sideA != 0) {
+                cut -= sideA * matrix.get(displaced, a);
+            }
+            if (sideB != 0) {
+                cut -= sideB * matrix.get(displaced, b);
+            }
+        }
+        delta += shift * cut;
+
+        // Other rows: real facilities inside the displaced range against the ones outside it
+        boolean sparse = instance.isSparse();
+        for (int d = realFrom; d < realTo; d++) {
+            int displaced = realIds[shiftRow][d];
+            if (displaced == a || displaced == b) {
+                continue;
+            }
+            long center = realCenters[shiftRow][d];
+            long newCenter = center + shift;
+            if (!sparse) {
+                int offset = matrix.rowOffset(displaced);
+                for (int row = 0; row < realIds.length; row++) {
+                    if (row == shiftRow) {
+                        continue;
+                    }
+                    for (int k = 0; k < solution.realCount[row]; k++) {
+                        int other = realIds[row][k];
+                        if (other == a || other == b) {
+                            continue;
+                        }
+                        long otherCenter = realCenters[row][k];
+                        long otherNewCenter = otherCenter;
+                        int i = realPositions[row][k];
+                        if (row == otherRow && i >= otherFrom && i < otherTo) {
+                            if (!includeOtherRange) {
+                                continue;
+                            }
+                            otherNewCenter += otherShift;
+                        }
+                        delta += (Math.abs(newCenter - otherNewCenter) - Math.abs(center - otherCenter)) * matrix.get(offset + other);
+                    }
+                }
+                continue;
+            }
+            // Only partners with nonzero weight
+            for (int e = start[displaced]; e < start[displaced + 1]; e++) {
+                int other = neighbors[e];
+                int row = facilityRow[other];
+                if (row == DRFLPSolution.UNASSIGNED || row == shiftRow || other == a || other == b) {
+                    continue;
+                }
+                int k = facilityRealIndex[other];
+                int i = realPositions[row][k];
+                long otherCenter = realCenters[row][k];
+                long otherNewCenter = otherCenter;
+                if (row == otherRow && i >= otherFrom && i < otherTo) {
+                    if (!includeOtherRange) {
+                        continue;
+                    }
+                    otherNewCenter += otherShift;
+                }
+                delta += (Math.abs(newCenter - otherNewCenter) - Math.abs(center - otherCenter)) * weights[e];
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Side of the range starting at from where the given facility is: 1 if it is on the left in the same row,
+     * -1 if it is on the right in the same row, 0 if it is not a real facility of the row
+     */
+    private static int side(DRFLPSolution solution, int id, int row, int from) {
+        if (id < 0 || solution.facilityRow[id] != row) {
+            return 0;
+        }
+        return solution.realPositions[row][solution.facilityRealIndex[id]] < from ? 1 : -1;
+    }
+
+    private static long shift(int row, int index,
+                              int shiftRow1, int from1, int to1, long shift1,
+                              int shiftRow2, int from2, int to2, long shift2) {
+        if (row == shiftRow1 && index >= from1 && index < to1) {
+            return shift1;
+        }
+        if (row == shiftRow2 && index >= from2 && index < to2) {
+            return shift2;
+        }
+        return 0;
+    }
+}
@@ -10,21 +10,103 @@ public class DRFLPInstance extends Instance {
 
     // DRLP always has 2 rows
     public static final int NROWS = 2;
+    // Cost loops only iterate the sparse adjacency if the ratio of nonzero weights is below this value,
+    // in denser instances iterating all facilities sequentially is faster
+    private static final double SPARSE_DENSITY = 0.2;
     private static Comparator<DRFLPInstance> comparator = Comparator.comparing(DRFLPInstance::getNRealFacilities).thenComparing(DRFLPInstance::getName);
 
     private final Facility[] facilities;
-    private final int[][] weigths;
+    private final double[] widths;
+    private final long[] fixedWidths;
+    private final WeightMatrix weights;
+
+    // Compressed sparse row adjacency, only built at import for sparse instances: nonzero weight partners of facility i are
+    // neighbors[neighborStart[i]] ... neighbors[neighborStart[i+1] - 1], with weights in the same positions of neighborWeights.
+    // Partners of each facility are sorted by decreasing weight, so the first ones are the heaviest partners
+    private final int[] neighborStart;
+    private final int[] neighbors;
+    private final int[] neighborWeights;
+    private final boolean sparse;
+    // Heaviest partners of each facility for the last k requested, built on demand
+    private volatile HeaviestPartners heaviestPartners;
 
     public DRFLPInstance(String name, Facility[] facilities, int[][] weigths){
         super(name);
         this.facilities = new Facility[facilities.length];
-        this.weigths = weigths;
+        this.widths = new double[facilities.length];
+        this.fixedWidths = new long[facilities.length];
+        this.weights = WeightMatrix.of(weigths);
 
         for (int i = 0; i < facilities.length; i++) {
             this.facilities[i] = facilities[i];
+            this.widths[i] = facilities[i].width;
+            this.fixedWidths[i] = FixedPoint.width(facilities[i].width);
+        }
+
+        // Count the nonzero weight partners first, so the instance is classified before building the adjacency
+        int n = facilities.length;
+        var degrees = new int[n];
+        long nonzero = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && weigths[i][j] != 0) {
+                    degrees[i]++;
+                }
+            }
+            nonzero += degrees[i];
+        }
+        this.sparse = nonzero < SPARSE_DENSITY * n * (n - 1);
+        if (!this.sparse) {
+            // Dense cost loops scan the weight matrix, the adjacency would take as much memory as the matrix
+            this.neighborStart = null;
+            this.neighbors = null;
+            this.neighborWeights = null;
+            return;
+        }
+
+        this.neighborStart = new int[n + 1];
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            this.neighborStart[i + 1] = this.neighborStart[i] + degrees[i];
+            maxDegree = Math.max(maxDegree, degrees[i]);
+        }
+        this.neighbors = new int[this.neighborStart[n]];
+        this.neighborWeights = new int[this.neighborStart[n]];
+        var keys = new long[maxDegree];
+        for (int i = 0; i < n; i++) {
+            sortedPartners(i, this.neighbors, this.neighborWeights, this.neighborStart[i], degrees[i], keys);
         }
     }
 
+    /**
+     * Write the heaviest nonzero weight partners of facility i, sorted by decreasing weight and then by id,
+     * to ids and partnerWeights starting at offset
+     * @param limit maximum number of partners to write
+     * @param keys scratch array with room for every partner of i
+     * @return number of partners written
+     */
+    private int sortedPartners(int i, int[] ids, int[] partnerWeights, int offset, int limit, long[] keys) {
+        int n = getNRealFacilities();
+        int rowOffset = this.weights.rowOffset(i);
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            int w = this.weights.get(rowOffset + j);
+            if (i != j && w != 0) {
+                // Weight in the high half and complemented id in the low half:
+                // ascending order is increasing weight and then decreasing id, the reverse of the required order
+                keys[count++] = ((long) w << 32) | (~j & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        int written = Math.min(count, limit);
+        for (int e = 0; e < written; e++) {
+            long key = keys[count - 1 - e];
+            ids[offset + e] = ~(int) key;
+            partnerWeights[offset + e] = (int) (key >> 32);
+        }
+        return written;
+    }
+
     public int getNRealFacilities() {
         return facilities.length;
     }
@@ -37,7 +119,7 @@ public class DRFLPInstance extends Instance {
         if(f1.fake || f2.fake){
             return 0;
         }
-        return this.weigths[f1.id][f2.id];
+        return this.weights.get(f1.id, f2.id);
     }
 
     public int getWeight(int f1, int f2){
@@ -45,7 +127,100 @@ public class DRFLPInstance extends Instance {
             return 0;
         }
 
-        return this.weigths[f1][f2];
+        return this.weights.get(f1, f2);
+    }
+
+    /**
+     * Weights between every pair of real facilities, for performance sensitive loops
+     */
+    WeightMatrix weights(){
+        return this.weights;
+    }
+
+    /**
+     * True if cost loops should iterate the nonzero weight partners of each facility instead of all facilities
+     */
+    boolean isSparse(){
+        return this.sparse;
+    }
+
+    /**
+     * Start of the nonzero weight partners of each real facility in neighbors() and neighborWeights(),
+     * the partners of facility i end at neighborStart()[i + 1]. Null if the instance is not sparse.
+     * The array must not be modified.
+     */
+    int[] neighborStart(){
+        return this.neighborStart;
+    }
+
+    /**
+     * Nonzero weight partners of every real facility sorted by decreasing weight, see neighborStart().
+     * Null if the instance is not sparse. The array must not be modified.
+     */
+    int[] neighbors(){
+        return this.neighbors;
+    }
+
+    /**
+     * Weight to each partner in neighbors(). Null if the instance is not sparse. The array must not be modified.
+     */
+    int[] neighborWeights(){
+        return this.neighborWeights;
+    }
+
+    /**
+     * Up to k nonzero weight partners of every real facility, sorted by decreasing weight and then by id.
+     * Built on first use and kept until a different k is requested. The arrays must not be modified.
+     * @param k maximum number of partners of each facility
+     * @return partners of facility i at index i
+     */
+    int[][] heaviestPartners(int k){
+        var current = this.heaviestPartners;
+        if (current == null || current.k != k) {
+            current = new HeaviestPartners(k, buildHeaviestPartners(k));
+            this.heaviestPartners = current;
+        }
+        return current.partners;
+    }
+
+    private int[][] buildHeaviestPartners(int k){
+        int n = getNRealFacilities();
+        var partners = new int[n][];
+        if (this.sparse) {
+            for (int i = 0; i < n; i++) {
+                partners[i] = Arrays.copyOfRange(this.neighbors, this.neighborStart[i], Math.min(this.neighborStart[i + 1], this.neighborStart[i] + k));
+            }
+            return partners;
+        }
+        var ids = new int[n];
+        var partnerWeights = new int[n];
+        var keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int count = sortedPartners(i, ids, partnerWeights, 0, k, keys);
+            partners[i] = Arrays.copyOf(ids, count);
+        }
+        return partners;
+    }
+
+    private record HeaviestPartners(int k, int[][] partners) {}
+
+    /**
+     * Width of the real facility with the given id
+     * @param id facility id, must not be a fake facility
+     * @return facility width
+     */
+    public double getWidth(int id){
+        return this.widths[id];
+    }
+
+    /**
+     * Width of the real facility with the given id, in fixed point units
+     * @param id facility id, must not be a fake facility
+     * @return facility width
+     * @see FixedPoint
+     */
+    public long getFixedWidth(int id){
+        return this.fixedWidths[id];
     }
 
     // todo: improve implementation
@@ -9,25 +9,84 @@ import java.util.*;
 
 public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
 
-    protected double cachedScore;
-    // Rows * Position
-    protected FacilityPosition[][] solutionData;
-    protected final HashSet<Facility> notAssignedFacilities;
+    // Score in fixed point units, see FixedPoint
+    protected long cachedScore;
+    // Rows * Position: facility id at each position, fake facilities have negative ids
+    protected int[][] ids;
+    // Rows * Position: center of the facility at each position in fixed point units, parallel to ids
+    protected long[][] centers;
+    // Rows * (Position + 1): total width of the facilities placed before each position, in fixed point units
+    protected long[][] prefixWidths;
+
+    // Compact view of each row with only its real facilities, rebuilt with the centers.
+    // Fake facilities have no weight, so cost functions only iterate these arrays and their complexity
+    // does not depend on the number of fake facilities. Empty space between real facilities is given by getGap.
+    // Rows * Real index: real facility ids, centers and position in the row
+    protected int[][] realIds;
+    protected long[][] realCenters;
+    protected int[][] realPositions;
+    // Rows * (Position + 1): number of real facilities before each position
+    protected int[][] realsBefore;
+    protected final int[] realCount;
+    // Real facility id -> row where it is assigned, or UNASSIGNED, its index in the compact view of that row and its center.
+    // Used to find partners by id when iterating the nonzero weights of a facility.
+    protected final int[] facilityRow;
+    protected final int[] facilityRealIndex;
+    protected final long[] facilityCenter;
+    protected static final int UNASSIGNED = -1;
+    // Rows: modification counter, increased each time the real facilities of the row or their centers may have changed.
+    // Cached cost profiles compare the row contents when it changes, so restoring a row after a temporary move keeps them valid.
+    protected final long[] rowVersion;
+    // Lazily built, not shared between clones
+    private CrossRowProfiles crossRowProfiles;
+    private SweepCache sweepCache;
+    // Real facility id -> sum of weights to the other real facilities of its row, and to the ones on its left.
+    // Together they give the weight crossing each side of a facility, so the same row cost of swapping
+    // two consecutive facilities is O(1), see consecutiveSwapRowDelta. Updated incrementally by each operation.
+    protected final long[] rowWeight;
+    protected final long[] leftWeight;
+
+    // Bitset of facilities not assigned to any row, indexed by slot: real facilities use their id as slot,
+    // the fake facility with id -(i+1) uses slot nRealFacilities + i. Grows when fake facilities are added.
+    protected long[] pending;
+    protected int nPending;
     protected final int[] rowSize;
     protected int nFakeFacilities = 0;
     protected int assignedFacilities = 0;
     protected int lastFakeId = -1;
 
+    // Width of each fake facility in fixed point units, the fake facility with id -(i+1) is at index i.
+    // The array is replaced instead of modified when growing, so it can be shared between clones.
+    protected long[] fakeWidths = new long[0];
+
     protected Map<Double, List<Facility>> fakeFacilities;
 
     protected List<Piece> pendingPieces = new ArrayList<>();
 
+    // Lazily built object view of the solution data, null if it must be rebuilt
+    private FacilityPosition[][] solutionDataView;
+
     public List<Piece> getPendingPieces() {
         return pendingPieces;
     }
 
+    /**
+     * Object view of the current solution data, built on demand. Modifying the view does not modify the solution.
+     * Prefer the primitive accessors (getFacilityId, getCenter...) in performance sensitive code.
+     * @return Rows * Position matrix, positions greater or equal than the row size are null.
+     */
     public FacilityPosition[][] getSolutionData() {
-        return solutionData;
+        if(solutionDataView == null){
+            var view = new FacilityPosition[ids.length][];
+            for (int i = 0; i < ids.length; i++) {
+                view[i] = new FacilityPosition[ids[i].length];
+                for (int j = 0; j < rowSize[i]; j++) {
+                    view[i][j] = new FacilityPosition(getFacility(i, j), FixedPoint.toDouble(centers[i][j]));
+                }
+            }
+            solutionDataView = view;
+        }
+        return solutionDataView;
     }
 
     /**
@@ -37,10 +96,28 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
     public DRFLPSolution(DRFLPInstance instance) {
         super(instance);
         // Each row can have at most N elements
-        solutionData = new FacilityPosition[instance.getNRows()][instance.getNRealFacilities()];
-        rowSize = new int[instance.getNRows()];
+        int nRows = instance.getNRows();
+        int n = instance.getNRealFacilities();
+        ids = new int[nRows][n];
+        centers = new long[nRows][n];
+        prefixWidths = new long[nRows][n + 1];
+        realIds = new int[nRows][n];
+        realCenters = new long[nRows][n];
+        realPositions = new int[nRows][n];
+        realsBefore = new int[nRows][n + 1];
+        realCount = new int[nRows];
+        facilityRow = new int[n];
+        facilityRealIndex = new int[n];
+        facilityCenter = new long[n];
+        rowVersion = new long[nRows];
+        rowWeight = new long[n];
+        leftWeight = new long[n];
+        rowSize = new int[nRows];
         // No facilities are assigned at start
-        notAssignedFacilities = new HashSet<>(instance.getFacilities());
+        pending = new long[words(n)];
+        for (int id = 0; id < n; id++) {
+            setPending(id);
+        }
         fakeFacilities = new HashMap<>();
     }
 
@@ -50,21 +127,51 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
      */
     public DRFLPSolution(DRFLPSolution s) {
         super(s);
-        // Copy solution data
-        solutionData = new FacilityPosition[s.solutionData.length][];
-        for (int i = 0; i < solutionData.length; i++) {
-            solutionData[i] = new FacilityPosition[s.solutionData[i].length];
-            for (int j = 0; j < solutionData[i].length; j++) {
-                if(s.solutionData[i][j] != null){
-                    solutionData[i][j] = new FacilityPosition(s.solutionData[i][j]);
-                }
-            }
+        this.rowSize = s.rowSize.clone();
+        this.realCount = s.realCount.clone();
+        this.facilityRow = s.facilityRow.clone();
+        this.facilityRealIndex = s.facilityRealIndex.clone();
+        this.facilityCenter = s.facilityCenter.clone();
+        this.rowVersion = s.rowVersion.clone();
+        this.rowWeight = s.rowWeight.clone();
+        this.leftWeight = s.leftWeight.clone();
+
+        // Copy solution data, only the used part of each row
+        int nRows = s.ids.length;
+        this.ids = new int[nRows][];
+        this.centers = new long[nRows][];
+        this.prefixWidths = new long[nRows][];
+        this.realIds = new int[nRows][];
+        this.realCenters = new long[nRows][];
+        this.realPositions = new int[nRows][];
+        this.realsBefore = new int[nRows][];
+        for (int i = 0; i < nRows; i++) {
+            int capacity = s.ids[i].length;
+            int size = this.rowSize[i];
+            this.ids[i] = new int[capacity];
+            this.centers[i] = new long[capacity];
+            this.prefixWidths[i] = new long[capacity + 1];
+            System.arraycopy(s.ids[i], 0, this.ids[i], 0, size);
+            System.arraycopy(s.centers[i], 0, this.centers[i], 0, size);
+            System.arraycopy(s.prefixWidths[i], 0, this.prefixWidths[i], 0, size + 1);
+
+            int realCapacity = s.realIds[i].length;
+            int reals = this.realCount[i];
+            this.realIds[i] = new int[realCapacity];
+            this.realCenters[i] = new long[realCapacity];
+            this.realPositions[i] = new int[realCapacity];
+            this.realsBefore[i] = new int[capacity + 1];
+            System.arraycopy(s.realIds[i], 0, this.realIds[i], 0, reals);
+            System.arraycopy(s.realCenters[i], 0, this.realCenters[i], 0, reals);
+            System.arraycopy(s.realPositions[i], 0, this.realPositions[i], 0, reals);
+            System.arraycopy(s.realsBefore[i], 0, this.realsBefore[i], 0, size + 1);
         }
 
         this.pendingPieces = new ArrayList<>(s.pendingPieces);
         this.nFakeFacilities = s.nFakeFacilities;
-        this.rowSize = s.rowSize.clone();
-        this.notAssignedFacilities = new HashSet<>(s.notAssignedFacilities);
+        this.fakeWidths = s.fakeWidths;
+        this.pending = s.pending.clone();
+        this.nPending = s.nPending;
 
         // Deep clone fake facilities
         this.fakeFacilities = new HashMap<>();
@@ -79,6 +186,17 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
         return this.assignedFacilities;
     }
 
+    /**
+     * Number of real facilities assigned to any row, fake facilities are not counted
+     */
+    public int getNAssignedRealFacilities(){
+        int total = 0;
+        for (int reals : this.realCount) {
+            total += reals;
+        }
+        return total;
+    }
+
     public Map<Double, List<Facility>> getFakeFacilities() {
         return fakeFacilities;
     }
@@ -88,50 +206,149 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
 
         // Resize data structures to accommodate worst case (all fakes in same row)
         this.nFakeFacilities += widths.length;
-        for (int i = 0; i < this.solutionData.length; i++) {
-            this.solutionData[i] = Arrays.copyOf(this.solutionData[i], this.solutionData[i].length + widths.length);
+        for (int i = 0; i < this.ids.length; i++) {
+            this.ids[i] = Arrays.copyOf(this.ids[i], this.ids[i].length + widths.length);
+            this.centers[i] = Arrays.copyOf(this.centers[i], this.centers[i].length + widths.length);
+            this.prefixWidths[i] = Arrays.copyOf(this.prefixWidths[i], this.prefixWidths[i].length + widths.length);
+            this.realsBefore[i] = Arrays.copyOf(this.realsBefore[i], this.realsBefore[i].length + widths.length);
         }
 
         var fakeFacilities = new Facility[widths.length];
+        var newFakeWidths = Arrays.copyOf(this.fakeWidths, this.fakeWidths.length + widths.length);
         for (int i = 0; i < widths.length; i++) {
-            fakeFacilities[i] = new Facility(lastFakeId--, widths[i], true);
+            fakeFacilities[i] = new Facility(lastFakeId, widths[i], true);
+            newFakeWidths[-lastFakeId - 1] = FixedPoint.width(widths[i]);
+            lastFakeId--;
             this.fakeFacilities.computeIfAbsent(widths[i], (k) -> new ArrayList<>()).add(fakeFacilities[i]);
         }
-        this.notAssignedFacilities.addAll(Arrays.asList(fakeFacilities));
+        this.fakeWidths = newFakeWidths;
+        this.pending = Arrays.copyOf(this.pending, words(getInstance().getNRealFacilities() + newFakeWidths.length));
+        for (var f : fakeFacilities) {
+            setPending(f.id);
+        }
         return fakeFacilities;
     }
 
     public void deassignAll(){
-        for (int rowId = 0; rowId < this.solutionData.length; rowId++) {
+        for (int rowId = 0; rowId < this.ids.length; rowId++) {
             for (int j = 0, rowSize = this.getRowSize(rowId); j < rowSize; j++) {
                 this.assignedFacilities--;
                 this.rowSize[rowId]--;
-                this.notAssignedFacilities.add(this.solutionData[rowId][j].facility);
-                this.solutionData[rowId][j] = null;
+                this.setPending(this.ids[rowId][j]);
             }
+            this.recalculateCentersInPlace(rowId);
         }
-        this.rebuildCaches();
+        // Empty solution, nothing to evaluate
+        this.cachedScore = 0;
     }
 
     public void deassignAllFakeFacilities(){
         this.fakeFacilities = new HashMap<>();
-        for (int rowId = 0; rowId < this.solutionData.length; rowId++) {
+        for (int rowId = 0; rowId < this.ids.length; rowId++) {
+            var row = this.ids[rowId];
             for (int j = 0, j2 = 0, rowSize = this.getRowSize(rowId); j < rowSize; j++, j2++) {
-                if(this.solutionData[rowId][j].facility.fake){
+                if(row[j] < 0){
                     j2--;
                     this.assignedFacilities--;
                     this.rowSize[rowId]--;
-                    this.notAssignedFacilities.add(this.solutionData[rowId][j].facility);
+                    this.setPending(row[j]);
                 } else {
-                    this.solutionData[rowId][j2] = this.solutionData[rowId][j];
+                    row[j2] = row[j];
                 }
             }
         }
         this.rebuildCaches();
     }
 
-    public Set<Facility> getNotAssignedFacilities() {
-        return Collections.unmodifiableSet(notAssignedFacilities);
+    /**
+     * Facilities not assigned to any row, in slot order. A new list is built on each call,
+     * prefer iterating with nextPendingSlot in performance sensitive code.
+     * @return list of pending facilities
+     */
+    public List<Facility> getNotAssignedFacilities() {
+        var list = new ArrayList<Facility>(nPending);
+        for (int slot = nextPendingSlot(0); slot >= 0; slot = nextPendingSlot(slot + 1)) {
+            list.add(getPendingFacility(slot));
+        }
+        return list;
+    }
+
+    /**
+     * Number of facilities, real or fake, not assigned to any row
+     */
+    public int getNPendingFacilities() {
+        return nPending;
+    }
+
+    /**
+     * Check if a facility is not assigned to any row
+     * @param id facility id, negative for fake facilities
+     * @return true if the facility is pending, false if it is assigned
+     */
+    public boolean isPending(int id) {
+        int slot = slot(id);
+        return (pending[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Iterate pending facilities without allocating, usage:
+     * for (int slot = s.nextPendingSlot(0); slot >= 0; slot = s.nextPendingSlot(slot + 1))
+     * The solution can be modified while iterating, facilities in later slots are always visited
+     * if they are pending when reached.
+     * @param from first slot to check
+     * @return first pending slot greater or equal than from, -1 if there are none
+     */
+    public int nextPendingSlot(int from) {
+        int word = from >>> 6;
+        if (word >= pending.length) {
+            return -1;
+        }
+        long bits = pending[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == pending.length) {
+                return -1;
+            }
+            bits = pending[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Facility in the given pending slot
+     * @param slot slot returned by nextPendingSlot
+     * @return facility, real or fake
+     */
+    public Facility getPendingFacility(int slot) {
+        int n = getInstance().getNRealFacilities();
+        return facility(slot < n ? slot : n - slot - 1);
+    }
+
+    /**
+     * Index of the given facility in the pending bitset, also used to index per facility data of fake facilities
+     */
+    int slot(int id) {
+        return id >= 0 ? id : getInstance().getNRealFacilities() - id - 1;
+    }
+
+    private void setPending(int id) {
+        int slot = slot(id);
+        assert !isPending(id);
+        pending[slot >>> 6] |= 1L << slot;
+        nPending++;
+        if (id >= 0) {
+            facilityRow[id] = UNASSIGNED;
+        }
+    }
+
+    private void clearPending(int id) {
+        int slot = slot(id);
+        assert isPending(id);
+        pending[slot >>> 6] &= ~(1L << slot);
+        nPending--;
+    }
+
+    private static int words(int nSlots) {
+        return (nSlots + 63) >>> 6;
     }
 
     public int getRowSize(int rowIndex){
@@ -146,29 +363,114 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
         return getInstance().getNRows();
     }
 
+    /**
+     * Id of the facility at the given position, negative if it is a fake facility
+     */
+    public int getFacilityId(int row, int index){
+        assert index < this.rowSize[row];
+        return this.ids[row][index];
+    }
+
+    /**
+     * Center of the facility at the given position
+     */
+    public double getCenter(int row, int index){
+        assert index < this.rowSize[row];
+        return FixedPoint.toDouble(this.centers[row][index]);
+    }
+
+    /**
+     * Facility at the given position
+     */
+    public Facility getFacility(int row, int index){
+        assert index < this.rowSize[row];
+        return facility(this.ids[row][index]);
+    }
+
+    /**
+     * Total width of the given row
+     */
+    public double getRowWidth(int row){
+        return FixedPoint.toDouble(this.prefixWidths[row][this.rowSize[row]]);
+    }
+
+    /**
+     * Number of real facilities in the given row
+     */
+    public int getRealCount(int row){
+        return this.realCount[row];
+    }
+
+    /**
+     * Id of the k-th real facility of the given row, ignoring fake facilities
+     */
+    public int getRealFacilityId(int row, int k){
+        assert k < this.realCount[row];
+        return this.realIds[row][k];
+    }
+
+    /**
+     * Empty space left by fake facilities before the k-th real facility of the given row, as a number of half units.
+     * If k is equal to the number of real facilities in the row, returns the empty space after the last real facility.
+     */
+    public int getGap(int row, int k){
+        assert k <= this.realCount[row];
+        long start = k == 0 ? 0 : this.realCenters[row][k - 1] + width(this.realIds[row][k - 1]) / 2;
+        long end = k == this.realCount[row] ?
+                this.prefixWidths[row][this.rowSize[row]] :
+                this.realCenters[row][k] - width(this.realIds[row][k]) / 2;
+        return (int) ((end - start) / (FixedPoint.SCALE / 2));
+    }
+
+    /**
+     * Facility with the given id, real or fake
+     */
+    protected Facility facility(int id){
+        return id >= 0 ? getInstance().byId(id) : new Facility(id, FixedPoint.toDouble(fakeWidths[-id - 1]), true);
+    }
+
+    /**
+     * Width of the facility with the given id, real or fake, in fixed point units
+     */
+    protected long width(int id){
+        return id >= 0 ? getInstance().getFixedWidth(id) : fakeWidths[-id - 1];
+    }
+
     private void assertCorrectSizes(){
         assert this.assignedFacilities == ArrayUtil.sum(this.rowSize) : String.format("Size mismatch: Ref %s, sum %s", this.assignedFacilities, ArrayUtil.sum(this.rowSize));
-        assert this.assignedFacilities == Arrays.stream(this.solutionData).flatMap(Arrays::stream).filter(Objects::nonNull).count();
     }
 
     public void remove(int rowIndex, int i) {
-        var rowData = this.solutionData[rowIndex];
-        var f = rowData[i];
+        remove(rowIndex, i, DRFLPDeltaEvaluator.removeCost(this, rowIndex, i));
+    }
+
+    /**
+     * Remove the facility at the given position when the score change is already known,
+     * for example when undoing an insertion, skipping its O(n) evaluation
+     * @param cost score change of removing the facility
+     */
+    public void remove(int rowIndex, int i, double cost) {
+        var rowData = this.ids[rowIndex];
+        var f = getFacility(rowIndex, i);
         assertCorrectSizes();
 
-        // Validation removed because it is not expected to fulfill this requirement.
-        //assert DoubleComparator.equals(this.cachedScore, this.recalculateScore());
+        // Score is updated incrementally, so the cached score must be valid before removing
+        assert this.cachedScore == this.recalculateFixedScore();
+        assert FixedPoint.toFixed(cost) == DRFLPDeltaEvaluator.removeFixedCost(this, rowIndex, i);
 
-        assert !this.notAssignedFacilities.contains(rowData[i].facility);
-        ArrayUtil.remove(rowData, i);
+        assert !this.isPending(f.id);
+        this.cachedScore += FixedPoint.toFixed(cost);
+        System.arraycopy(rowData, i + 1, rowData, i, rowSize[rowIndex] - i - 1);
         rowSize[rowIndex]--;
         this.assignedFacilities--;
-        rowData[rowSize[rowIndex]] = null;
-        this.notAssignedFacilities.add(f.facility);
-
-        this.rebuildCaches();
-        assert DoubleComparator.equals(this.cachedScore, this.recalculateScore()) : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.cachedScore);
-        assert this.notAssignedFacilities.contains(f.facility);
+        this.setPending(f.id);
+
+        // Only the centers of the facilities to the right in the current row change
+        this.recalculateCentersInPlace(rowIndex, i, rowSize[rowIndex]);
+        this.removeCutWeights(rowIndex, i, f.id);
+        assert this.cachedScore == this.recalculateFixedScore() : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.getScore());
+        assert this.isPending(f.id);
+        assert cutWeightsAreValid();
         assertCorrectSizes();
     }
 
@@ -257,7 +559,16 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
      */
     @Override
     public double getScore() {
-        return this.cachedScore;
+        return FixedPoint.toDouble(this.cachedScore);
+    }
+
+    /**
+     * Update the cached score after executing a move
+     * @param delta score change, as calculated by the move
+     */
+    void updateScore(double delta){
+        this.cachedScore += FixedPoint.toFixed(delta);
+        assert this.cachedScore >= 0 : "Cannot have negative score in this problem: " + this.getScore();
     }
 
     /**
@@ -270,58 +581,98 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
      */
     @Override
     public double recalculateScore() {
+        return FixedPoint.toDouble(recalculateFixedScore());
+    }
+
+    /**
+     * Recalculate solution score from scratch in fixed point units, without side effects
+     * @return current solution score in fixed point units
+     */
+    protected long recalculateFixedScore() {
         var centers = recalculateCentersCopy();
-        return totalDistanceNew(getInstance(), this.rowSize, centers);
+        return totalDistanceNew(getInstance(), this.rowSize, this.ids, centers);
     }
 
     public void rebuildCaches(){
-        this.solutionData = recalculateCentersCopy();
-        this.cachedScore = totalDistanceNew(getInstance(), this.rowSize, this.solutionData);
-    }
-
-    private static double totalDistanceNew(DRFLPInstance instance, int[] rowSize, FacilityPosition[][] data){
-        double cost = 0;
-        for (int first_row = 0; first_row < data.length; first_row++) {
-            for (int first_pos = 0; first_pos < rowSize[first_row]; first_pos++) {
-                var first_facility = data[first_row][first_pos];
-                for (int second_row = 0; second_row < data.length; second_row++) {
-                    for (int second_pos = 0; second_pos < rowSize[second_row]; second_pos++) {
-                        var second_facility = data[second_row][second_pos];
-                        cost += Math.abs(first_facility.lastCenter - second_facility.lastCenter) * instance.getWeight(first_facility.facility, second_facility.facility);
-                    }
+        for (int i = 0; i < this.ids.length; i++) {
+            recalculateCentersInPlace(i);
+            rebuildCutWeights(i);
+        }
+        this.cachedScore = totalDistanceNew(getInstance(), this.rowSize, this.ids, this.centers);
+    }
+
+    private static long totalDistanceNew(DRFLPInstance instance, int[] rowSize, int[][] ids, long[][] centers){
+        // Flatten real facilities of all rows, fake facilities do not contribute to the score
+        int n = instance.getNRealFacilities();
+        var realIds = new int[n];
+        var realCenters = new double[n];
+        int count = 0;
+        for (int row = 0; row < ids.length; row++) {
+            for (int pos = 0; pos < rowSize[row]; pos++) {
+                if(ids[row][pos] >= 0){
+                    realIds[count] = ids[row][pos];
+                    realCenters[count] = centers[row][pos];
+                    count++;
                 }
             }
         }
-        return cost / 2;
+        return ObjectiveKernel.pairCost(instance, realIds, realCenters, count);
     }
 
 
     public double partialCost(final int row, final int index1, final int index2){
+        return FixedPoint.toDouble(partialFixedCost(row, index1, index2));
+    }
+
+    protected long partialFixedCost(final int row, final int index1, final int index2){
         var instance = getInstance();
-        double total = 0;
-        // todos los afectados cambia su coste, faltaria verificar que esto esta bien
-        // ademas podria optimizarse mas seguramente
-        for (int i = index1; i <= index2; i++) {
-            for (int currentRow = 0; currentRow < solutionData.length; currentRow++) {
-                for (int k = 0; k < this.rowSize[currentRow]; k++) {
-                    final var b1 = solutionData[row][i];
-                    final var b2 = solutionData[currentRow][k];
-                    final double cost = Math.abs(b1.lastCenter - b2.lastCenter) * instance.getWeight(b1.facility, b2.facility);
-                    if(currentRow == row && k >= index1 && k <= index2){
-                        // Si esta dentro del rango modificado evitamos contar doble
-                        total += cost / 2;
-                    } else {
-                        total += cost;
+        long total = 0;
+        // Only real facilities contribute to the cost
+        final int from = realsBefore[row][index1];
+        final int to = realsBefore[row][index2 + 1];
+        final int[] start = instance.neighborStart();
+        final int[] neighbors = instance.neighbors();
+        final int[] weights = instance.neighborWeights();
+        final int assignedReals = getNAssignedRealFacilities();
+        for (int i = from; i < to; i++) {
+            final int f1 = realIds[row][i];
+            final long c1 = realCenters[row][i];
+            if(!instance.isSparse() || start[f1 + 1] - start[f1] > assignedReals){
+                // Dense instance, or fewer assigned facilities than partners as happens while constructing a solution
+                final WeightMatrix f1Weights = instance.weights();
+                final int offset = f1Weights.rowOffset(f1);
+                for (int currentRow = 0; currentRow < realIds.length; currentRow++) {
+                    for (int k = 0; k < this.realCount[currentRow]; k++) {
+                        if(currentRow == row && k >= from && k <= i){
+                            // Si esta dentro del rango modificado evitamos contar doble
+                            continue;
+                        }
+                        total += Math.abs(c1 - realCenters[currentRow][k]) * f1Weights.get(offset + realIds[currentRow][k]);
                     }
                 }
+                continue;
+            }
+            // Only partners with nonzero weight
+            for (int e = start[f1]; e < start[f1 + 1]; e++) {
+                final int f2 = neighbors[e];
+                final int currentRow = facilityRow[f2];
+                if(currentRow == UNASSIGNED){
+                    continue;
+                }
+                final int k = facilityRealIndex[f2];
+                if(currentRow == row && k >= from && k <= i){
+                    // Si esta dentro del rango modificado evitamos contar doble
+                    continue;
+                }
+                total += Math.abs(c1 - realCenters[currentRow][k]) * weights[e];
             }
         }
         return total;
     }
 
-    protected FacilityPosition[][] recalculateCentersCopy() {
-        var positions = new FacilityPosition[this.solutionData.length][];
-        for (int i = 0; i < this.solutionData.length; i++) {
+    protected long[][] recalculateCentersCopy() {
+        var positions = new long[this.ids.length][];
+        for (int i = 0; i < this.ids.length; i++) {
             positions[i] = recalculateCentersCopy(i);
         }
         return positions;
@@ -332,64 +683,451 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
     }
 
     public static double evaluate(DRFLPInstance instance, int[][] facilitiesIds, double fakeWidth){
-        double[][] centers = centers(instance, facilitiesIds, fakeWidth);
-        double cost = 0;
-        for (int first_row = 0; first_row < facilitiesIds.length; first_row++) {
-            for (int first_pos = 0; first_pos < facilitiesIds[first_row].length; first_pos++) {
-                var first_facility = facilitiesIds[first_row][first_pos];
-                for (int second_row = 0; second_row < facilitiesIds.length; second_row++) {
-                    for (int second_pos = 0; second_pos < facilitiesIds[second_row].length; second_pos++) {
-                        var second_facility = facilitiesIds[second_row][second_pos];
-                        cost += Math.abs(centers[first_row][first_pos] - centers[second_row][second_pos]) * instance.getWeight(first_facility, second_facility);
-                    }
+        long fixedFakeWidth = FixedPoint.width(fakeWidth);
+        int n = instance.getNRealFacilities();
+        var realIds = new int[n];
+        var realCenters = new double[n];
+        int count = 0;
+        for (int[] row : facilitiesIds) {
+            long leftDistance = 0;
+            for (int id : row) {
+                // Fake facilities only displace the following facilities
+                if (id < 0) {
+                    leftDistance += fixedFakeWidth;
+                    continue;
                 }
+                long width = instance.getFixedWidth(id);
+                realIds[count] = id;
+                realCenters[count] = leftDistance + width / 2;
+                count++;
+                leftDistance += width;
             }
         }
-        return cost / 2;
+        return FixedPoint.toDouble(ObjectiveKernel.pairCost(instance, realIds, realCenters, count));
     }
 
     public static double[][] centers(DRFLPInstance instance, int[][] facilitiesIds, double fakeWidth){
-        double[][] centers = new double[facilitiesIds.length][];
+        long[][] fixedCenters = fixedCenters(instance, facilitiesIds, fakeWidth);
+        double[][] centers = new double[fixedCenters.length][];
+        for (int i = 0; i < fixedCenters.length; i++) {
+            centers[i] = new double[fixedCenters[i].length];
+            for (int j = 0; j < fixedCenters[i].length; j++) {
+                centers[i][j] = FixedPoint.toDouble(fixedCenters[i][j]);
+            }
+        }
+        return centers;
+    }
+
+    private static long[][] fixedCenters(DRFLPInstance instance, int[][] facilitiesIds, double fakeWidth){
+        long fixedFakeWidth = FixedPoint.width(fakeWidth);
+        long[][] centers = new long[facilitiesIds.length][];
         for (int i = 0; i < facilitiesIds.length; i++) {
             int size = facilitiesIds[i].length;
-            centers[i] = new double[size];
-            double leftDistance = 0;
+            centers[i] = new long[size];
+            long leftDistance = 0;
             for (int j = 0; j < size; j++) {
                 int id = facilitiesIds[i][j];
-                double width = id >=0? instance.byId(id).width: fakeWidth;
-                double newCenter = leftDistance + width / (double) 2;
-                centers[i][j] = newCenter;
+                long width = id >=0? instance.getFixedWidth(id): fixedFakeWidth;
+                centers[i][j] = leftDistance + width / 2;
                 leftDistance += width;
             }
         }
         return centers;
     }
 
-    private FacilityPosition[] recalculateCentersCopy(int rowIndex){
-        double leftDistance = 0;
+    private long[] recalculateCentersCopy(int rowIndex){
+        long leftDistance = 0;
         var size = this.rowSize[rowIndex];
-        var row = solutionData[rowIndex];
-        var newRow = new FacilityPosition[getInstance().getNRealFacilities() + this.nFakeFacilities];
+        var row = this.ids[rowIndex];
+        var newCenters = new long[size];
 
         for (int i = 0; i < size; i++) {
-            var position = this.solutionData[rowIndex][i];
-            double newCenter = leftDistance + position.facility.width / (double) 2;
-            newRow[i] = new FacilityPosition(row[i].facility, newCenter);
-            leftDistance += position.facility.width;
+            long width = width(row[i]);
+            newCenters[i] = leftDistance + width / 2;
+            leftDistance += width;
         }
 
-        return newRow;
+        return newCenters;
     }
 
     public void recalculateCentersInPlace(int rowindex){
-        double leftDistance = 0;
-        var row = solutionData[rowindex];
+        recalculateCentersInPlace(rowindex, 0, this.rowSize[rowindex]);
+    }
+
+    /**
+     * Recalculate the cached data of the positions in range [from, to) of the given row, after modifying them.
+     * Positions before from must not have changed. If to is smaller than the row size, the facilities in the range
+     * must have the same total width as before, so the facilities after the range keep their centers.
+     * If to is the row size, the row may have grown or shrunk.
+     */
+    void recalculateCentersInPlace(int rowindex, int from, int to){
+        var row = this.ids[rowindex];
+        var rowCenters = this.centers[rowindex];
+        var prefix = this.prefixWidths[rowindex];
+        var before = this.realsBefore[rowindex];
+        var rowRealIds = this.realIds[rowindex];
+        var rowRealCenters = this.realCenters[rowindex];
+        var rowRealPositions = this.realPositions[rowindex];
         int size = this.rowSize[rowindex];
-        for (int i = 0; i < size; i++) {
-            var position = row[i];
-            position.lastCenter = leftDistance + position.facility.width / (double) 2;
-            leftDistance += position.facility.width;
+        assert from <= to && to <= size;
+        long leftDistance = prefix[from];
+        int reals = before[from];
+
+        for (int i = from; i < to; i++) {
+            long width = width(row[i]);
+            prefix[i] = leftDistance;
+            before[i] = reals;
+            rowCenters[i] = leftDistance + width / 2;
+            if(row[i] >= 0){
+                rowRealIds[reals] = row[i];
+                rowRealCenters[reals] = rowCenters[i];
+                rowRealPositions[reals] = i;
+                this.facilityRow[row[i]] = rowindex;
+                this.facilityRealIndex[row[i]] = reals;
+                this.facilityCenter[row[i]] = rowCenters[i];
+                reals++;
+            }
+            leftDistance += width;
+        }
+        if(to == size){
+            prefix[size] = leftDistance;
+            before[size] = reals;
+            this.realCount[rowindex] = reals;
+        }
+        assert prefix[to] == leftDistance && before[to] == reals : "Range width or number of real facilities changed";
+        this.rowVersion[rowindex]++;
+        this.solutionDataView = null;
+    }
+
+    /**
+     * Cross-row cost profiles of this solution, created on first use
+     */
+    CrossRowProfiles crossRowProfiles(){
+        if(this.crossRowProfiles == null){
+            this.crossRowProfiles = new CrossRowProfiles(this.ids.length, getInstance().getNRealFacilities());
+        }
+        return this.crossRowProfiles;
+    }
+
+    /**
+     * Cached sweeps of the move by swap neighborhood for this solution, created on first use
+     */
+    SweepCache sweepCache(){
+        if(this.sweepCache == null){
+            this.sweepCache = new SweepCache(this.ids.length);
+        }
+        return this.sweepCache;
+    }
+
+    /**
+     * Same row cost change of swapping the consecutive facilities at leftIndex and leftIndex + 1, in O(1).
+     * The left facility moves right by the width of the right one and vice versa, so each one changes its distance
+     * to the facilities on each side of the pair by the width of the other one.
+     * @return cost change in fixed point units, only against facilities of the same row
+     */
+    long consecutiveSwapRowDelta(int row, int leftIndex){
+        int leftId = this.ids[row][leftIndex];
+        int rightId = this.ids[row][leftIndex + 1];
+        long pairWeight = leftId >= 0 && rightId >= 0 ? getInstance().weights().get(leftId, rightId) : 0;
+        long delta = 0;
+        if(leftId >= 0){
+            long left = this.leftWeight[leftId];
+            long right = this.rowWeight[leftId] - left - pairWeight;
+            delta += width(rightId) * (left - right);
+        }
+        if(rightId >= 0){
+            long left = this.leftWeight[rightId] - pairWeight;
+            long right = this.rowWeight[rightId] - this.leftWeight[rightId];
+            delta += width(leftId) * (right - left);
+        }
+        return delta;
+    }
+
+    /**
+     * Update the cut weights after inserting a facility at the given position, centers must be up to date.
+     * O(n) in the number of real facilities of the row.
+     */
+    private void addCutWeights(int row, int position){
+        int id = this.ids[row][position];
+        if(id < 0){
+            return;
+        }
+        var matrix = getInstance().weights();
+        int offset = matrix.rowOffset(id);
+        var rowRealIds = this.realIds[row];
+        int k = this.facilityRealIndex[id];
+        long left = 0, total = 0;
+        for (int j = 0; j < this.realCount[row]; j++) {
+            if(j == k){
+                continue;
+            }
+            int other = rowRealIds[j];
+            long w = matrix.get(offset + other);
+            this.rowWeight[other] += w;
+            total += w;
+            if(j < k){
+                left += w;
+            } else {
+                this.leftWeight[other] += w;
+            }
+        }
+        this.rowWeight[id] = total;
+        this.leftWeight[id] = left;
+    }
+
+    /**
+     * Update the cut weights after removing the given facility from the given position, centers must be up to date.
+     * O(n) in the number of real facilities of the row.
+     */
+    private void removeCutWeights(int row, int position, int id){
+        if(id < 0){
+            return;
+        }
+        var matrix = getInstance().weights();
+        int offset = matrix.rowOffset(id);
+        var rowRealIds = this.realIds[row];
+        // Positions before the removed one did not change
+        int k = this.realsBefore[row][position];
+        for (int j = 0; j < this.realCount[row]; j++) {
+            int other = rowRealIds[j];
+            long w = matrix.get(offset + other);
+            this.rowWeight[other] -= w;
+            if(j >= k){
+                this.leftWeight[other] -= w;
+            }
+        }
+    }
+
+    /**
+     * Update the cut weights after moving the facility at position from to position to in the same row.
+     * Only the facilities it crossed change, O(|from - to|).
+     */
+    private void moveCutWeights(int row, int from, int to){
+        int id = this.ids[row][to];
+        if(id < 0 || from == to){
+            return;
+        }
+        var matrix = getInstance().weights();
+        int offset = matrix.rowOffset(id);
+        var rowRealIds = this.realIds[row];
+        var before = this.realsBefore[row];
+        int k = this.facilityRealIndex[id];
+        // Real facilities crossed by the moved one, in their current real indexes
+        int start = from < to ? before[from] : k + 1;
+        int end = from < to ? k : before[from + 1];
+        long sign = from < to ? -1 : 1;
+        long crossed = 0;
+        for (int j = start; j < end; j++) {
+            int other = rowRealIds[j];
+            long w = matrix.get(offset + other);
+            this.leftWeight[other] += sign * w;
+            crossed += w;
+        }
+        this.leftWeight[id] -= sign * crossed;
+    }
+
+    /**
+     * Update the cut weights after reversing the facilities between index1 and index2, both inclusive.
+     * Every pair of real facilities in the fragment exchanges sides, O(k^2) in the size of the fragment.
+     */
+    private void reverseCutWeights(int row, int index1, int index2){
+        var matrix = getInstance().weights();
+        var rowRealIds = this.realIds[row];
+        int first = this.realsBefore[row][index1];
+        int end = this.realsBefore[row][index2 + 1];
+        for (int a = first; a < end; a++) {
+            int left = rowRealIds[a];
+            int offset = matrix.rowOffset(left);
+            for (int b = a + 1; b < end; b++) {
+                int right = rowRealIds[b];
+                long w = matrix.get(offset + right);
+                this.leftWeight[right] += w;
+                this.leftWeight[left] -= w;
+            }
+        }
+    }
+
+    /**
+     * Recalculate the cut weights of every real facility in the given row, O(n^2) in the number of real facilities of the row.
+     */
+    private void rebuildCutWeights(int row){
+        var matrix = getInstance().weights();
+        var rowRealIds = this.realIds[row];
+        int m = this.realCount[row];
+        for (int k = 0; k < m; k++) {
+            int id = rowRealIds[k];
+            int offset = matrix.rowOffset(id);
+            long left = 0, total = 0;
+            for (int j = 0; j < m; j++) {
+                long w = j == k ? 0 : matrix.get(offset + rowRealIds[j]);
+                total += w;
+                if(j < k){
+                    left += w;
+                }
+            }
+            this.rowWeight[id] = total;
+            this.leftWeight[id] = left;
+        }
+    }
+
+    /**
+     * Check that the incrementally updated cut weights match the ones calculated from scratch. Used in assertions.
+     */
+    protected boolean cutWeightsAreValid(){
+        var matrix = getInstance().weights();
+        for (int row = 0; row < this.ids.length; row++) {
+            int m = this.realCount[row];
+            for (int k = 0; k < m; k++) {
+                int id = this.realIds[row][k];
+                long left = 0, total = 0;
+                for (int j = 0; j < m; j++) {
+                    long w = j == k ? 0 : matrix.get(id, this.realIds[row][j]);
+                    total += w;
+                    if(j < k){
+                        left += w;
+                    }
+                }
+                if(this.rowWeight[id] != total || this.leftWeight[id] != left){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that the cached centers are the same as the centers calculated from scratch. Used in assertions.
+     * @return true if all the cached centers are valid
+     */
+    protected boolean centersAreValid(){
+        var expected = recalculateCentersCopy();
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                if(expected[i][j] != this.centers[i][j]){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Operations used by neighborhoods to modify the solution, they do not update the solution score
+
+    /**
+     * Move the facility at position from to position to in the same row, displacing all the facilities between them
+     */
+    void moveInRow(int row, int from, int to){
+        var rowData = this.ids[row];
+        int value = rowData[from];
+        if(from < to){
+            System.arraycopy(rowData, from + 1, rowData, from, to - from);
+        } else {
+            System.arraycopy(rowData, to, rowData, to + 1, from - to);
         }
+        rowData[to] = value;
+        // Facilities outside the range keep their centers
+        recalculateCentersInPlace(row, Math.min(from, to), Math.max(from, to) + 1);
+        moveCutWeights(row, from, to);
+    }
+
+    /**
+     * Remove the facility at (row1, index1) and insert it in a different row at (row2, index2)
+     */
+    void moveToRow(int row1, int index1, int row2, int index2){
+        assert row1 != row2;
+        var origin = this.ids[row1];
+        var destination = this.ids[row2];
+        int value = origin[index1];
+        System.arraycopy(origin, index1 + 1, origin, index1, rowSize[row1] - index1 - 1);
+        System.arraycopy(destination, index2, destination, index2 + 1, rowSize[row2] - index2);
+        destination[index2] = value;
+        rowSize[row1]--;
+        rowSize[row2]++;
+        recalculateCentersInPlace(row1, index1, rowSize[row1]);
+        recalculateCentersInPlace(row2, index2, rowSize[row2]);
+        removeCutWeights(row1, index1, value);
+        addCutWeights(row2, index2);
+    }
+
+    /**
+     * Exchange the facilities at the given positions
+     */
+    void swapFacilities(int row1, int index1, int row2, int index2){
+        int temp = this.ids[row1][index1];
+        this.ids[row1][index1] = this.ids[row2][index2];
+        this.ids[row2][index2] = temp;
+        if(row1 == row2){
+            recalculateCentersInPlace(row1, Math.min(index1, index2), Math.max(index1, index2) + 1);
+        } else {
+            recalculateCentersInPlace(row1, index1, rowSize[row1]);
+            recalculateCentersInPlace(row2, index2, rowSize[row2]);
+            rebuildCutWeights(row2);
+        }
+        rebuildCutWeights(row1);
+    }
+
+    /**
+     * Exchange two consecutive facilities in the same row, only updating the centers of both facilities
+     */
+    void swapConsecutive(int row, int leftIndex){
+        var rowData = this.ids[row];
+        var rowCenters = this.centers[row];
+        int rightIndex = leftIndex + 1;
+        int leftId = rowData[leftIndex];
+        int rightId = rowData[rightIndex];
+        long start = this.prefixWidths[row][leftIndex];
+        long rightWidth = width(rightId);
+
+        rowData[leftIndex] = rightId;
+        rowData[rightIndex] = leftId;
+        rowCenters[leftIndex] = start + rightWidth / 2;
+        rowCenters[rightIndex] = start + rightWidth + width(leftId) / 2;
+        this.prefixWidths[row][rightIndex] = start + rightWidth;
+        this.rowVersion[row]++;
+
+        // Update compact view of real facilities
+        int k = this.realsBefore[row][leftIndex];
+        if(leftId >= 0 && rightId >= 0){
+            this.realIds[row][k] = rightId;
+            this.realIds[row][k + 1] = leftId;
+            this.realCenters[row][k] = rowCenters[leftIndex];
+            this.realCenters[row][k + 1] = rowCenters[rightIndex];
+            this.facilityRealIndex[rightId] = k;
+            this.facilityRealIndex[leftId] = k + 1;
+            this.facilityCenter[rightId] = rowCenters[leftIndex];
+            this.facilityCenter[leftId] = rowCenters[rightIndex];
+            // Both facilities now have the other one on the opposite side
+            long w = getInstance().weights().get(leftId, rightId);
+            this.leftWeight[leftId] += w;
+            this.leftWeight[rightId] -= w;
+        } else if(leftId >= 0){
+            // Real facility moves right over a fake one
+            this.realPositions[row][k] = rightIndex;
+            this.realCenters[row][k] = rowCenters[rightIndex];
+            this.realsBefore[row][rightIndex] = k;
+            this.facilityCenter[leftId] = rowCenters[rightIndex];
+        } else if(rightId >= 0){
+            // Real facility moves left over a fake one
+            this.realPositions[row][k] = leftIndex;
+            this.realCenters[row][k] = rowCenters[leftIndex];
+            this.realsBefore[row][rightIndex] = k + 1;
+            this.facilityCenter[rightId] = rowCenters[leftIndex];
+        }
+        this.solutionDataView = null;
+    }
+
+    /**
+     * Reverse the facilities between index1 and index2, both inclusive
+     */
+    void reverseFragment(int row, int index1, int index2){
+        var rowData = this.ids[row];
+        for (int i = index1, j = index2; i < j; i++, j--) {
+            int temp = rowData[i];
+            rowData[i] = rowData[j];
+            rowData[j] = temp;
+        }
+        recalculateCentersInPlace(row, index1, index2 + 1);
+        reverseCutWeights(row, index1, index2);
     }
 
     /**
@@ -400,94 +1138,100 @@ public class DRFLPSolution extends Solution<DRFLPSolution, DRFLPInstance> {
     @Override
     public String toString() {
         return "DRFLPSolution{" +
-                "sc=" + cachedScore +
+                "sc=" + getScore() +
                 '}';
     }
 
-    public double insertCost(int rowIndex, int index1, FacilityPosition f){
+    public double insertCost(int rowIndex, int index1, Facility f){
         int tope = rowSize[rowIndex];
-        var row = this.solutionData[rowIndex];
+        var row = this.ids[rowIndex];
 
         // Antes de hacer el movimiento
-        assert equalsSolutionData(recalculateCentersCopy());
-        double before = partialCost(rowIndex, index1, tope-1);
+        assert centersAreValid();
+        long before = partialFixedCost(rowIndex, index1, tope-1);
 
         // Do movement
         System.arraycopy(row, index1, row, index1+1, rowSize[rowIndex]-index1);
-        row[index1] = f;
+        row[index1] = f.id;
         rowSize[rowIndex]++;
-        recalculateCentersInPlace(rowIndex);
+        recalculateCentersInPlace(rowIndex, index1, rowSize[rowIndex]);
+        addCutWeights(rowIndex, index1);
 
         // Despues de hacer el movimiento
-        double after = partialCost(rowIndex, index1, tope);
+        long after = partialFixedCost(rowIndex, index1, tope);
 
         // Deshacemos el movimiento
         rowSize[rowIndex]--;
-        System.arraycopy(row, index1+1, row, index1, rowSize[rowIndex]-index1); // Todo, no faltaria un -1 al length?
-        row[rowSize[rowIndex]] = null;
-        recalculateCentersInPlace(rowIndex);
+        System.arraycopy(row, index1+1, row, index1, rowSize[rowIndex]-index1);
+        recalculateCentersInPlace(rowIndex, index1, rowSize[rowIndex]);
+        removeCutWeights(rowIndex, index1, f.id);
+        if(f.id >= 0){
+            this.facilityRow[f.id] = UNASSIGNED;
+        }
 
         // Al deshacer el coste deberia quedar igual
-        assert DoubleComparator.equals(before, partialCost(rowIndex, index1, tope-1));
+        assert before == partialFixedCost(rowIndex, index1, tope-1);
 
-        return after - before;
+        return FixedPoint.toDouble(after - before);
     }
 
-    public void insert(int rowIndex, int index1, double cost, FacilityPosition box){
-        assert DoubleComparator.equals(this.cachedScore, this.recalculateScore());
-        assert this.notAssignedFacilities.contains(box.facility);
+    public void insert(int rowIndex, int index1, double cost, Facility f){
+        assert this.cachedScore == this.recalculateFixedScore();
+        assert this.isPending(f.id);
         assertCorrectSizes();
 
-        cachedScore += cost;
-        var row = solutionData[rowIndex];
+        cachedScore += FixedPoint.toFixed(cost);
+        var row = ids[rowIndex];
         // Desplazamos hacia la derecha 1 posicion la longitud justa y necesaria.
         // Si el array estuviera completo deberia fallar
         System.arraycopy(row, index1, row, index1+1, rowSize[rowIndex]-index1);
-        row[index1] = box;
+        row[index1] = f.id;
         rowSize[rowIndex]++;
         this.assignedFacilities++;
-        this.notAssignedFacilities.remove(box.facility);
-        recalculateCentersInPlace(rowIndex);
+        this.clearPending(f.id);
+        recalculateCentersInPlace(rowIndex, index1, rowSize[rowIndex]);
+        addCutWeights(rowIndex, index1);
 
-        assert DoubleComparator.equals(this.cachedScore, this.recalculateScore()) : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.cachedScore);
-        assert !this.notAssignedFacilities.contains(box.facility);
+        assert this.cachedScore == this.recalculateFixedScore() : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.getScore());
+        assert !this.isPending(f.id);
+        assert cutWeightsAreValid();
         assertCorrectSizes();
     }
 
     public void insertLast(int rowIndex, Facility facility){
-        assert DoubleComparator.equals(this.cachedScore, this.recalculateScore());
-        assert this.notAssignedFacilities.contains(facility);
+        assert this.cachedScore == this.recalculateFixedScore();
+        assert this.isPending(facility.id);
 
         int position = this.rowSize[rowIndex];
-        var facilityPosition = new FacilityPosition(facility);
-        double cost = this.insertCost(rowIndex, position, facilityPosition);
+        double cost = this.insertCost(rowIndex, position, facility);
 
-        cachedScore += cost;
-        var row = solutionData[rowIndex];
-        row[position] = facilityPosition;
+        cachedScore += FixedPoint.toFixed(cost);
+        ids[rowIndex][position] = facility.id;
         rowSize[rowIndex]++;
         this.assignedFacilities++;
-        this.notAssignedFacilities.remove(facility);
-        recalculateCentersInPlace(rowIndex);
+        this.clearPending(facility.id);
+        recalculateCentersInPlace(rowIndex, position, rowSize[rowIndex]);
+        addCutWeights(rowIndex, position);
 
-        assert DoubleComparator.equals(this.cachedScore, this.recalculateScore()) : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.cachedScore);
-        assert !this.notAssignedFacilities.contains(facility);
+        assert this.cachedScore == this.recalculateFixedScore() : String.format("Score mismatch, expected %s cached is %s", this.recalculateScore(), this.getScore());
+        assert !this.isPending(facility.id);
     }
 
-    public boolean equalsSolutionData(FacilityPosition[][] data){
-        if(this.solutionData.length != data.length){
+    /**
+     * Check if both solutions have the same facilities in the same positions with the same centers
+     * @param other solution to compare
+     * @return true if both solutions have the same data, false otherwise
+     */
+    public boolean equalsSolutionData(DRFLPSolution other){
+        if(this.ids.length != other.ids.length){
             return false;
         }
-        for (int i = 0; i < data.length; i++) {
-            if(this.solutionData[i].length != data[i].length){
+        for (int i = 0; i < this.ids.length; i++) {
+            if(this.rowSize[i] != other.rowSize[i]){
                 return false;
             }
-            //for (int j = 0; j < data[i].length; j++) {
             for (int j = 0; j < rowSize[i]; j++) {
-                if(data[i][j] == null && this.solutionData[i][j] == null){
-                    continue;
-                }
-                if(data[i][j] == null || this.solutionData[i][j] == null || !data[i][j].equals(this.solutionData[i][j])){
+                if(this.ids[i][j] != other.ids[i][j] || this.centers[i][j] != other.centers[i][j]){
                     return false;
                 }
             }
@@ -0,0 +1,55 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Exact fixed point representation for widths, centers and scores.
+ * Facility widths are integers and fake facilities are 0.5 wide, so every center is a multiple of 0.25
+ * and every cost is an integer multiple of 0.25. Values are stored as longs in quarter units,
+ * so incremental score updates never accumulate rounding errors.
+ */
+public final class FixedPoint {
+
+    /**
+     * Number of fixed point units per unit of length
+     */
+    public static final int SCALE = 4;
+
+    private FixedPoint() {}
+
+    /**
+     * Convert a width to fixed point. Widths must be multiples of 0.5 so the center of any facility can be represented.
+     * @param width width as double
+     * @return width in quarter units, always even
+     * @throws IllegalArgumentException if the width is not a multiple of 0.5
+     */
+    public static long width(double width) {
+        long fixed = toFixed(width);
+        if (fixed % 2 != 0) {
+            throw new IllegalArgumentException("Width must be a multiple of 0.5, got " + width);
+        }
+        return fixed;
+    }
+
+    /**
+     * Convert a length or score to fixed point.
+     * @param value value as double
+     * @return value in quarter units
+     * @throws IllegalArgumentException if the value is not a multiple of 0.25
+     */
+    public static long toFixed(double value) {
+        double scaled = value * SCALE;
+        long fixed = (long) scaled;
+        if (fixed != scaled) {
+            throw new IllegalArgumentException("Value cannot be represented in fixed point: " + value);
+        }
+        return fixed;
+    }
+
+    /**
+     * Convert a fixed point value back to double, the conversion is exact.
+     * @param fixed value in quarter units
+     * @return value as double
+     */
+    public static double toDouble(long fixed) {
+        return fixed / (double) SCALE;
+    }
+}
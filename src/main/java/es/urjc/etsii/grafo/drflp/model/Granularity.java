@@ -0,0 +1,215 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import java.util.Arrays;
+
+/**
+ * Granular neighborhoods: good moves place a facility near its heaviest partners, so destinations are restricted
+ * to a window of positions around the current position of the k heaviest partners of the moved facility.
+ * Fake facilities, real facilities without partners, and real facilities without any of their k heaviest partners
+ * in the destination row, are restricted to a window around their own position,
+ * which in other rows is the position of the facility that contains their center.
+ * Reduces the number of destinations per facility from O(n) to O(k * window).
+ */
+public final class Granularity {
+
+    private final int k;
+    private final int window;
+
+    /**
+     * Create a new granularity configuration
+     * @param k number of heaviest partners of each facility used as reference
+     * @param window maximum distance, in positions, between a destination and the position of a reference partner
+     */
+    public Granularity(int k, int window) {
+        if (k < 1 || window < 0) {
+            throw new IllegalArgumentException(String.format("Invalid granularity, k=%s, window=%s", k, window));
+        }
+        this.k = k;
+        this.window = window;
+    }
+
+    /**
+     * Check if the facility at (row, index) may be moved to position destination of destinationRow
+     */
+    boolean allows(DRFLPSolution solution, int row, int index, int destinationRow, int destination) {
+        return windows(solution, row, index, destinationRow).contains(destination);
+    }
+
+    /**
+     * Allowed destinations in destinationRow for the facility at (row, index)
+     */
+    Windows windows(DRFLPSolution solution, int row, int index, int destinationRow) {
+        int id = solution.ids[row][index];
+        var partners = id < 0 ? EMPTY : partners(solution, id);
+        var centers = new int[Math.max(1, partners.length)];
+        int count = 0;
+        for (int partner : partners) {
+            if (solution.facilityRow[partner] == destinationRow) {
+                centers[count++] = position(solution, partner);
+            }
+        }
+        if (count == 0) {
+            centers[count++] = ownPosition(solution, row, index, destinationRow);
+        }
+        return new Windows(centers, count, window);
+    }
+
+    /**
+     * Allowed destinations of the facility at each global position, as sorted global positions excluding its own,
+     * see DRFLPSolution.getRowIndexForPosition. Built in O(n * k * window).
+     * @param swaps true to return, for each position, the greater positions it may be swapped with:
+     *              a pair may be swapped if any of its facilities may be moved to the position of the other
+     * @return destinations of the facility at global position p at index p
+     */
+    int[][] destinations(DRFLPSolution solution, boolean swaps) {
+        int nRows = solution.getNRows();
+        int n = solution.allFacilitiesSize();
+        var rowStart = new int[nRows + 1];
+        for (int row = 0; row < nRows; row++) {
+            rowStart[row + 1] = rowStart[row] + solution.rowSize[row];
+        }
+        var destinations = new int[n][];
+        var buffer = new int[n];
+        for (int row = 0; row < nRows; row++) {
+            for (int index = 0; index < solution.rowSize[row]; index++) {
+                int position = rowStart[row] + index;
+                int count = 0;
+                for (int destinationRow = 0; destinationRow < nRows; destinationRow++) {
+                    count = windows(solution, row, index, destinationRow).fill(buffer, count, rowStart[destinationRow], solution.rowSize[destinationRow], position);
+                }
+                destinations[position] = Arrays.copyOf(buffer, count);
+            }
+        }
+        return swaps ? swapDestinations(destinations) : destinations;
+    }
+
+    /**
+     * Symmetric closure of the destinations of each position, keeping only the greater positions
+     */
+    private static int[][] swapDestinations(int[][] destinations) {
+        int n = destinations.length;
+        var counts = new int[n];
+        for (int p = 0; p < n; p++) {
+            for (int q : destinations[p]) {
+                counts[Math.min(p, q)]++;
+            }
+        }
+        var pairs = new int[n][];
+        for (int p = 0; p < n; p++) {
+            pairs[p] = new int[counts[p]];
+            counts[p] = 0;
+        }
+        for (int p = 0; p < n; p++) {
+            for (int q : destinations[p]) {
+                int low = Math.min(p, q);
+                pairs[low][counts[low]++] = Math.max(p, q);
+            }
+        }
+        for (int p = 0; p < n; p++) {
+            // Pairs allowed in both directions are repeated
+            var sorted = pairs[p];
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            pairs[p] = unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+        }
+        return pairs;
+    }
+
+    /**
+     * Position of the facility at (row, index) if it is projected to destinationRow:
+     * its own index in its row, or the position of the facility of destinationRow that contains its center,
+     * the row size if the center is after the end of destinationRow.
+     */
+    private static int ownPosition(DRFLPSolution solution, int row, int index, int destinationRow) {
+        if (row == destinationRow) {
+            return index;
+        }
+        long center = solution.centers[row][index];
+        int size = solution.rowSize[destinationRow];
+        int found = Arrays.binarySearch(solution.prefixWidths[destinationRow], 0, size + 1, center);
+        // Last position whose left side is not after the center
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * Heaviest partners of the real facility with the given id used as reference
+     */
+    private int[] partners(DRFLPSolution solution, int id) {
+        return solution.getInstance().heaviestPartners(k)[id];
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private static int position(DRFLPSolution solution, int id) {
+        return solution.realPositions[solution.facilityRow[id]][solution.facilityRealIndex[id]];
+    }
+
+    /**
+     * Set of allowed destinations in a row, union of windows around some positions, never empty
+     */
+    static final class Windows {
+        private final int[] centers;
+        private final int count;
+        private final int window;
+
+        private Windows(int[] centers, int count, int window) {
+            assert count > 0;
+            Arrays.sort(centers, 0, count);
+            this.centers = centers;
+            this.count = count;
+            this.window = window;
+        }
+
+        /**
+         * Lowest allowed destination, may be negative
+         */
+        int low() {
+            return centers[0] - window;
+        }
+
+        /**
+         * Highest allowed destination, may be greater than the row size
+         */
+        int high() {
+            return centers[count - 1] + window;
+        }
+
+        boolean contains(int destination) {
+            for (int i = 0; i < count; i++) {
+                if (Math.abs(centers[i] - destination) <= window) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Append the allowed destinations in [0, size), in increasing order and shifted by offset, to buffer
+         * @param skip shifted destination to leave out
+         * @return number of elements in buffer
+         */
+        private int fill(int[] buffer, int count, int offset, int size, int skip) {
+            int next = 0;
+            for (int i = 0; i < this.count; i++) {
+                int to = Math.min(centers[i] + window, size - 1);
+                for (int d = Math.max(next, centers[i] - window); d <= to; d++) {
+                    if (offset + d != skip) {
+                        buffer[count++] = offset + d;
+                    }
+                }
+                next = Math.max(next, to + 1);
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Granularity{k=" + k + ", window=" + window + '}';
+    }
+}
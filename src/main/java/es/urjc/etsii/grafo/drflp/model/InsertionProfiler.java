@@ -0,0 +1,146 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Insertion cost of a pending facility at every position of a row, calculated without changing the layout of the solution.
+ * Inserting facility f, with width w, at position p places it at x_p = prefixWidth_p + w/2 and displaces the facilities
+ * at positions p and later by w. The score change is the sum of:
+ * f against the facilities of its row, from running sums of weights and weighted centers on each side of p;
+ * f against the other rows, merging the increasing centers x_p with the sorted centers of each row;
+ * the displaced facilities against the rest of their row, w times the weight crossing position p, from the cut weights;
+ * and the displaced facilities against the other rows, as suffix sums of the cost of displacing each one by w.
+ * Each row is scanned once from right to left, O(n) plus the cost of displacing each facility of the row,
+ * O(log n) with the cross-row profiles in dense instances and O(degree) in sparse ones. All values are in fixed point units.
+ */
+public final class InsertionProfiler {
+
+    private InsertionProfiler() {}
+
+    /**
+     * Calculate the score change of inserting the pending facility f at each position of the given row.
+     * Does not change the layout of the solution, but on dense instances it builds or refreshes the cross-row profiles
+     * cached in the solution, so it must not be called concurrently on the same solution.
+     * @param solution current solution
+     * @param row row where the facility is inserted
+     * @param f pending facility
+     * @param costs output, costs[p] is the score change of inserting f at position p for p in [0, rowSize], in fixed point units
+     */
+    public static void profile(DRFLPSolution solution, int row, Facility f, long[] costs) {
+        assert solution.isPending(f.id);
+        int size = solution.rowSize[row];
+        var ids = solution.ids[row];
+        var centers = solution.centers[row];
+        var prefixWidths = solution.prefixWidths[row];
+        var weights = solution.getInstance().weights();
+        long width = solution.width(f.id);
+        boolean real = f.id >= 0;
+        int offset = real ? weights.rowOffset(f.id) : 0;
+
+        // Totals of f against its row, fake facilities do not have any weight
+        long totalWeight = 0, totalMoment = 0;
+        if (real) {
+            for (int i = 0; i < size; i++) {
+                int other = ids[i];
+                if (other >= 0) {
+                    long w = weights.get(offset + other);
+                    totalWeight += w;
+                    totalMoment += w * centers[i];
+                }
+            }
+        }
+
+        // Right to left, running sums over the facilities at positions p and later
+        long rightWeight = 0, rightMoment = 0;
+        long cut = 0, displaced = 0;
+        for (int p = size; p >= 0; p--) {
+            if (p < size && ids[p] >= 0) {
+                int id = ids[p];
+                long center = centers[p];
+                if (real) {
+                    long w = weights.get(offset + id);
+                    rightWeight += w;
+                    rightMoment += w * center;
+                }
+                // Facility at p goes from the left side of the cut to the right side
+                cut += 2 * solution.leftWeight[id] - solution.rowWeight[id];
+                displaced += crossRowShift(solution, row, id, center, center + width);
+            }
+            long x = prefixWidths[p] + width / 2;
+            long leftCost = x * (totalWeight - rightWeight) - (totalMoment - rightMoment);
+            // Facilities on the right are displaced by width
+            long rightCost = rightMoment + width * rightWeight - x * rightWeight;
+            costs[p] = leftCost + rightCost + width * cut + displaced;
+        }
+
+        if (!real) {
+            return;
+        }
+        for (int otherRow = 0; otherRow < solution.realIds.length; otherRow++) {
+            if (otherRow != row) {
+                addCrossRowCost(solution, row, otherRow, f.id, width, costs);
+            }
+        }
+    }
+
+    /**
+     * Add the cost of f, placed at each insertion position of row, against the facilities of otherRow.
+     * Both sequences of centers are increasing, so they are merged in a single pass.
+     */
+    private static void addCrossRowCost(DRFLPSolution solution, int row, int otherRow, int id, long width, long[] costs) {
+        var weights = solution.getInstance().weights();
+        int offset = weights.rowOffset(id);
+        var otherIds = solution.realIds[otherRow];
+        var otherCenters = solution.realCenters[otherRow];
+        int m = solution.realCount[otherRow];
+        long totalWeight = 0, totalMoment = 0;
+        for (int k = 0; k < m; k++) {
+            long w = weights.get(offset + otherIds[k]);
+            totalWeight += w;
+            totalMoment += w * otherCenters[k];
+        }
+
+        var prefixWidths = solution.prefixWidths[row];
+        // Facilities of otherRow with center <= x
+        long leftWeight = 0, leftMoment = 0;
+        int k = 0;
+        for (int p = 0; p <= solution.rowSize[row]; p++) {
+            long x = prefixWidths[p] + width / 2;
+            for (; k < m && otherCenters[k] <= x; k++) {
+                long w = weights.get(offset + otherIds[k]);
+                leftWeight += w;
+                leftMoment += w * otherCenters[k];
+            }
+            costs[p] += x * leftWeight - leftMoment + (totalMoment - leftMoment) - x * (totalWeight - leftWeight);
+        }
+    }
+
+    /**
+     * Cost change of moving the real facility with the given id from center to newCenter, only against other rows
+     */
+    private static long crossRowShift(DRFLPSolution solution, int row, int id, long center, long newCenter) {
+        var instance = solution.getInstance();
+        long delta = 0;
+        if (!instance.isSparse()) {
+            var profiles = solution.crossRowProfiles();
+            for (int otherRow = 0; otherRow < solution.realIds.length; otherRow++) {
+                if (otherRow != row) {
+                    delta += profiles.cost(solution, otherRow, id, newCenter) - profiles.cost(solution, otherRow, id, center);
+                }
+            }
+            return delta;
+        }
+
+        var start = instance.neighborStart();
+        var neighbors = instance.neighbors();
+        var weights = instance.neighborWeights();
+        for (int e = start[id]; e < start[id + 1]; e++) {
+            int other = neighbors[e];
+            int otherRow = solution.facilityRow[other];
+            if (otherRow == DRFLPSolution.UNASSIGNED || otherRow == row) {
+                continue;
+            }
+            long otherCenter = solution.facilityCenter[other];
+            delta += (Math.abs(newCenter - otherCenter) - Math.abs(center - otherCenter)) * weights[e];
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,150 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import es.urjc.etsii.grafo.solution.LazyMove;
+import es.urjc.etsii.grafo.solution.neighborhood.LazyNeighborhood;
+
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Same moves as MoveBySwapNeighborhood, in the same order, but generated on demand one sweep at a time.
+ * A sweep moves a facility step by step across a row and then restores it, so the solution is unchanged
+ * each time a move is returned. A first improvement local search stops after the sweep that contains
+ * the first improving move, and only the moves of the current sweep are kept in memory.
+ * Streams must be discarded once the solution is modified.
+ */
+public class LazyMoveBySwapNeighborhood extends LazyNeighborhood<LazyMoveBySwapNeighborhood.LazyMoveBySwap, DRFLPSolution, DRFLPInstance> {
+
+    private final Granularity granularity;
+
+    public LazyMoveBySwapNeighborhood() {
+        this(null);
+    }
+
+    /**
+     * Create a granular lazy move by swap neighborhood
+     * @param granularity destinations to evaluate for each facility, null to evaluate all of them
+     */
+    public LazyMoveBySwapNeighborhood(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
+    @Override
+    public Stream<LazyMoveBySwap> stream(DRFLPSolution solution) {
+        var first = new Sweeps(solution, granularity).next();
+        return first == null ? Stream.empty() : buildStream(first);
+    }
+
+    /**
+     * Position in the sequence of sweeps: facility at (row, position), swept across the row selected by step.
+     * Moves of the current sweep are buffered and returned one by one.
+     */
+    private static class Sweeps {
+        private final DRFLPSolution solution;
+        private final Granularity granularity;
+        private final ArrayList<MoveBySwapNeighborhood.MoveBySwap> buffer = new ArrayList<>();
+        private int bufferIndex = 0;
+        private int row = 0, position, step;
+
+        private Sweeps(DRFLPSolution solution, Granularity granularity) {
+            this.solution = solution;
+            this.granularity = granularity;
+            // Before the first position, so the first call to advance also skips empty rows
+            this.position = -1;
+            this.step = solution.getNRows() - 1;
+        }
+
+        /**
+         * Next move in sweep order, or null if there are no more moves
+         */
+        private LazyMoveBySwap next() {
+            while (bufferIndex >= buffer.size()) {
+                if (!advance()) {
+                    return null;
+                }
+                buffer.clear();
+                bufferIndex = 0;
+                int insertRow = MoveBySwapNeighborhood.sweepRow(row, step);
+                MoveBySwapNeighborhood.generateSweepMoves(buffer, solution, row, position, insertRow, granularity);
+            }
+            return new LazyMoveBySwap(this, buffer.get(bufferIndex++));
+        }
+
+        /**
+         * Move to the next sweep, skipping redundant positions
+         * @return false if all sweeps have been generated
+         */
+        private boolean advance() {
+            int nRows = solution.getNRows();
+            step++;
+            if (step < nRows) {
+                return true;
+            }
+            step = 0;
+            position++;
+            while (row < nRows) {
+                for (; position < solution.getRowSize(row); position++) {
+                    if (!MoveBySwapNeighborhood.redundantPosition(solution, row, position)) {
+                        return true;
+                    }
+                }
+                row++;
+                position = 0;
+            }
+            return false;
+        }
+    }
+
+    public static class LazyMoveBySwap extends LazyMove<DRFLPSolution, DRFLPInstance> {
+
+        private final Sweeps sweeps;
+        private final MoveBySwapNeighborhood.MoveBySwap move;
+        private LazyMoveBySwap next;
+        private boolean nextGenerated = false;
+
+        private LazyMoveBySwap(Sweeps sweeps, MoveBySwapNeighborhood.MoveBySwap move) {
+            super(move.getSolution());
+            this.sweeps = sweeps;
+            this.move = move;
+        }
+
+        @Override
+        public LazyMoveBySwap next() {
+            // Sweeps are shared by all the moves of the stream, generate the following move only once
+            if (!nextGenerated) {
+                next = sweeps.next();
+                nextGenerated = true;
+            }
+            return next;
+        }
+
+        @Override
+        protected void _execute() {
+            this.move._execute();
+        }
+
+        @Override
+        public boolean isValid() {
+            return this.move.isValid();
+        }
+
+        @Override
+        public double getValue() {
+            return this.move.getValue();
+        }
+
+        @Override
+        public boolean improves() {
+            return this.move.improves();
+        }
+
+        public MoveBySwapNeighborhood.MoveBySwap getMove() {
+            return move;
+        }
+
+        @Override
+        public String toString() {
+            return this.move.toString();
+        }
+    }
+}
@@ -2,7 +2,6 @@ package es.urjc.etsii.grafo.drflp.model;
 
 import es.urjc.etsii.grafo.solution.EagerMove;
 import es.urjc.etsii.grafo.solution.neighborhood.EagerNeighborhood;
-import es.urjc.etsii.grafo.util.ArrayUtil;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 import es.urjc.etsii.grafo.util.ValidationUtil;
 
@@ -12,88 +11,156 @@ import java.util.Objects;
 
 public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighborhood.MoveBySwap, DRFLPSolution, DRFLPInstance> {
 
+    // Restricts destinations to windows around the heaviest partners of each facility, null to evaluate all of them
+    private final Granularity granularity;
+
+    public MoveBySwapNeighborhood() {
+        this(null);
+    }
+
+    /**
+     * Create a granular move by swap neighborhood
+     * @param granularity destinations to evaluate for each facility, null to evaluate all of them
+     */
+    public MoveBySwapNeighborhood(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
     @Override
     public List<MoveBySwap> getMovements(DRFLPSolution solution) {
         var moves = new ArrayList<MoveBySwap>();
         var clone = new DRFLPSolution(solution);
         assert DoubleComparator.equals(clone.getScore(), solution.getScore());
-        assert clone.equalsSolutionData(solution.getSolutionData());
+        assert clone.equalsSolutionData(solution);
         double initialScore = solution.getScore();
 
-        for (int i = 0; i < solution.solutionData.length; i++) {
+        for (int i = 0; i < solution.getNRows(); i++) {
             generateRowMoves(moves, solution, i);
         }
 
         assert DoubleComparator.equals(initialScore, solution.recalculateScore());
         assert DoubleComparator.equals(clone.getScore(), solution.getScore());
-        assert clone.equalsSolutionData(solution.getSolutionData());
+        assert clone.equalsSolutionData(solution);
         return moves;
     }
 
     protected void generateRowMoves(List<MoveBySwap> moves, DRFLPSolution solution, int rowIndex) {
-        var rowData = solution.getSolutionData()[rowIndex];
-        int rowSize = solution.getRowSize(rowIndex);
-
         for (int position = 0; position < solution.rowSize[rowIndex]; position++) {
-            var target = rowData[position];
-
-            // Moves available in current row
-            right2LeftForPosition(moves, solution, rowIndex, position);
-            left2RightForPosition(moves, solution, rowIndex, position);
-
-            // Prepare for multirow movebyswap
-//            ArrayUtils.deleteAndInsert(rowData, position, rowSize-1);
-//            solution.recalculateCentersInPlace(rowIndex);
-//            assert target == rowData[rowSize-1];
-
-            // Moves available in other rows
-            for (int insertRow = 0; insertRow < solution.solutionData.length; insertRow++) {
-                if(rowIndex == insertRow){
-                    continue;
-                }
-                // Prepare using existing move
-                int insertIndex = solution.getRowSize(insertRow);
-                var insertRI = new DRFLPSolution.RowIndex(insertRow, insertIndex);
-                var originRI = new DRFLPSolution.RowIndex(rowIndex, position);
-
-                var prepareMove = new HelperMove(solution, originRI, insertRI);
-                double baseCost = prepareMove.getValue();
-                prepareMove._execute();
-
-                assert solution.getRowSize(rowIndex) == rowSize -1;
-
-                // Do
-                right2LeftForPosition(baseCost, rowIndex, position, moves, solution, insertRow, insertIndex);
-
-                // Undo using existing move
-                var undoMove = new HelperMove(solution, insertRI, originRI);
-                assert DoubleComparator.equals(-baseCost, undoMove.getValue());
-                undoMove._execute();
-                assert solution.getRowSize(rowIndex) == rowSize;
+            if (redundantPosition(solution, rowIndex, position)) {
+                continue;
             }
+            for (int insertRow = 0; insertRow < solution.getNRows(); insertRow++) {
+                generateSweepMoves(moves, solution, rowIndex, position, sweepRow(rowIndex, insertRow), granularity);
+            }
+        }
+    }
 
-            // Undo prepare for multirow movebyswap
-//            ArrayUtils.deleteAndInsert(rowData, rowSize - 1, position);
-//            solution.recalculateCentersInPlace(rowIndex);
+    /**
+     * Fakes in the same run are interchangeable, only the first one of each run is moved
+     */
+    static boolean redundantPosition(DRFLPSolution solution, int rowIndex, int position) {
+        return position > 0 && solution.ids[rowIndex][position] < 0 && solution.ids[rowIndex][position - 1] < 0;
+    }
+
+    /**
+     * Row swept in the given step for a facility in rowIndex: its own row first, then the other rows in order
+     */
+    static int sweepRow(int rowIndex, int step) {
+        if (step == 0) {
+            return rowIndex;
         }
+        return step - 1 < rowIndex ? step - 1 : step;
     }
 
+    /**
+     * Generate the moves of the facility at the given position sweeping it across insertRow,
+     * in both directions if it is its own row. The solution is left unchanged.
+     * If granularity is not null, the sweep only covers the allowed destinations.
+     * Each step of a sweep moves the facility one position. A step that swaps two fake facilities (see fakeSwap)
+     * leaves the layout as it was after the previous step, so its move is only generated when that layout was not:
+     * the current solution is never generated, the layout a cross-row sweep starts from is prepared but never generated,
+     * and a layout outside the granular windows is skipped.
+     */
+    static void generateSweepMoves(List<MoveBySwap> moves, DRFLPSolution solution, int rowIndex, int position, int insertRow, Granularity granularity) {
+        Granularity.Windows windows = null;
+        int first = 0, last = solution.getRowSize(insertRow);
+        if (granularity != null) {
+            windows = granularity.windows(solution, rowIndex, position, insertRow);
+            first = Math.max(first, windows.low());
+            last = Math.min(last, windows.high() + 1);
+        }
+
+        if (insertRow == rowIndex) {
+            // Moves available in current row
+            right2LeftForPosition(0, rowIndex, position, moves, solution, rowIndex, position, first, windows);
+            left2RightForPosition(moves, solution, rowIndex, position, last - 1, windows);
+            return;
+        }
+
+        // Moves available in other rows
+        int rowSize = solution.getRowSize(rowIndex);
+        // Prepare using existing move, after the last allowed destination
+        int insertIndex = last;
+        var insertRI = new DRFLPSolution.RowIndex(insertRow, insertIndex);
+        var originRI = new DRFLPSolution.RowIndex(rowIndex, position);
+
+        var prepareMove = new HelperMove(solution, originRI, insertRI);
+        double baseCost = prepareMove.getValue();
+        prepareMove._execute();
+
+        assert solution.getRowSize(rowIndex) == rowSize -1;
+
+        // Do
+        right2LeftForPosition(baseCost, rowIndex, position, moves, solution, insertRow, insertIndex, first, windows);
+
+        // Undo using existing move, its cost is known so there is no need to evaluate it again
+        var undoMove = new HelperMove(solution, insertRI, originRI, -baseCost);
+        assert DoubleComparator.equals(-baseCost, HelperMove.moveCost(solution, insertRI, originRI));
+        undoMove._execute();
+        assert solution.getRowSize(rowIndex) == rowSize;
+    }
+
+
+    /**
+     * Check if the facilities at positions i1 and i2 of the given row are both fake
+     * @return true if swapping them leaves the layout unchanged
+     */
+    private static boolean fakeSwap(DRFLPSolution solution, int row, int i1, int i2) {
+        return solution.ids[row][i1] < 0 && solution.ids[row][i2] < 0;
+    }
 
     public static void left2RightForPosition(List<MoveBySwap> moves, DRFLPSolution solution, int row, int position) {
+        left2RightForPosition(moves, solution, row, position, solution.rowSize[row] - 1, null);
+    }
+
+    /**
+     * Sweep the facility at the given position to the right until it reaches index last,
+     * only generating the moves whose destination is in windows, or all of them if windows is null
+     */
+    private static void left2RightForPosition(List<MoveBySwap> moves, DRFLPSolution solution, int row, int position, int last, Granularity.Windows windows) {
         // El score debe ser el mismo antes y despues
-        int rowSize = solution.rowSize[row];
         double initialScore = solution.getScore();
         double accCost = 0;
-        for (int j = position; j < rowSize - 1; j++) {
+        // Sweep starts from the current solution, which is not a move, so a fake swap right after it is skipped
+        boolean previousGenerated = true;
+        for (int j = position; j < last; j++) {
+            boolean noop = fakeSwap(solution, row, j, j + 1);
             double _cost = consecutiveSwapCost(solution, row, j, j + 1);
             accCost += _cost;
+            // Same layout as the previous step, only generated if the previous step was not
+            if (noop && previousGenerated) {
+                continue;
+            }
+            previousGenerated = windows == null || windows.contains(j + 1);
+            if (!previousGenerated) {
+                continue;
+            }
             var move = new MoveBySwap(solution, row, row, position, j, accCost, true);
             moves.add(move);
         }
         // Undo insert by swap
         // [a,b,c,d,e] ends like [b,c,d,e,a], delete last and insert on first position.
-        ArrayUtil.deleteAndInsert(solution.solutionData[row], solution.rowSize[row] - 1, position);
-        solution.recalculateCentersInPlace(row);
+        solution.moveInRow(row, Math.max(position, last), position);
 
         double finalScore = solution.getScore();
         assert DoubleComparator.equals(initialScore, finalScore);
@@ -101,142 +168,136 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
     }
 
     public static void right2LeftForPosition(List<MoveBySwap> moves, DRFLPSolution solution, int row, int position) {
-        // El score debe ser el mismo antes y despues
-        double initialScore = solution.getScore();
-        double accCost = 0;
-        for (int j = position; j > 0; j--) {
-            //double _cost = consecutiveSwapCost(solution, getAccCostMatrix(solution), row, j - 1, j);
-            double _cost = consecutiveSwapCost(solution, row, j - 1, j);
-            //assert DoubleComparator.equals(_cost, consecutiveSwapCostNOT_OPTIMIZED(solution, row, j, j + 1));
-            accCost += _cost;
-            var move = new MoveBySwap(solution, row, row, position, j, accCost, false);
-            moves.add(move);
-        }
-
-        // Undo insert by swap
-        // [a,b,c,d,e] ends like [e,a,b,c,d], delete last and insert on first position.
-        ArrayUtil.deleteAndInsert(solution.solutionData[row], 0, position);
-        solution.recalculateCentersInPlace(row);
-
-        double finalScore = solution.getScore();
-        assert DoubleComparator.equals(initialScore, finalScore);
-        assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
+        right2LeftForPosition(0, row, position, moves, solution, row, position, 0, null);
     }
 
     public static void right2LeftForPosition(double baseCost, int originalRow, int originalIndex, List<MoveBySwap> moves, DRFLPSolution solution, int row, int position) {
+        right2LeftForPosition(baseCost, originalRow, originalIndex, moves, solution, row, position, 0, null);
+    }
+
+    /**
+     * Sweep the facility at the given position to the left until it reaches index first,
+     * only generating the moves whose destination is in windows, or all of them if windows is null
+     */
+    private static void right2LeftForPosition(double baseCost, int originalRow, int originalIndex, List<MoveBySwap> moves, DRFLPSolution solution, int row, int position, int first, Granularity.Windows windows) {
         // El score debe ser el mismo antes y despues
         double initialScore = solution.getScore();
         double accCost = baseCost;
-        for (int j = position; j > 0; j--) {
+        // Sweeps in the same row start from the current solution, which is not a move,
+        // cross-row sweeps from a prepared layout that is not generated, so a fake swap right after it is a new move
+        boolean previousGenerated = originalRow == row;
+        for (int j = position; j > first; j--) {
             //double _cost = consecutiveSwapCost(solution, getAccCostMatrix(solution), row, j - 1, j);
+            boolean noop = fakeSwap(solution, row, j - 1, j);
             double _cost = consecutiveSwapCost(solution, row, j - 1, j);
             //assert DoubleComparator.equals(_cost, consecutiveSwapCostNOT_OPTIMIZED(solution, row, j, j + 1));
             accCost += _cost;
+            // Same layout as the previous step, only generated if the previous step was not
+            if (noop && previousGenerated) {
+                continue;
+            }
+            previousGenerated = windows == null || windows.contains(j - 1);
+            if (!previousGenerated) {
+                continue;
+            }
             var move = new MoveBySwap(solution, originalRow, row, originalIndex, j, accCost, false);
             moves.add(move);
         }
 
         // Undo insert by swap
         // [a,b,c,d,e] ends like [e,a,b,c,d], delete last and insert on first position.
-        ArrayUtil.deleteAndInsert(solution.solutionData[row], 0, position);
-        solution.recalculateCentersInPlace(row);
+        solution.moveInRow(row, Math.min(position, first), position);
 
         double finalScore = solution.getScore();
         assert DoubleComparator.equals(initialScore, finalScore);
         assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
     }
 
+    /**
+     * Generate insert moves for the facility at the given position, moving it step by step to the start of the row.
+     * The facility is left at index 0, and the solution score is updated so it matches the new layout.
+     */
     public static void right2LeftConstructive(double baseCost, List<MoveBySwap> moves, DRFLPSolution solution, int row, int position) {
-        // El score debe ser el mismo antes y despues
-        double initialScore = solution.getScore();
         double accCost = baseCost;
         for (int j = position; j > 0; j--) {
             //double _cost = consecutiveSwapCost(solution, getAccCostMatrix(solution), row, j - 1, j);
             double _cost = consecutiveSwapCost(solution, row, j - 1, j);
             //assert DoubleComparator.equals(_cost, consecutiveSwapCostNOT_OPTIMIZED(solution, row, j, j + 1));
             accCost += _cost;
+            solution.updateScore(_cost);
             var move = new MoveBySwap(solution, -1, row, -1, j, accCost, false);
             moves.add(move);
         }
+        assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
     }
 
 
     private static double consecutiveSwapCost(DRFLPSolution solution, int row, int leftIndex, int rightIndex) {
         int rowSize = solution.rowSize[row];
-        var rowData = solution.solutionData[row];
-        var instance = solution.getInstance();
+        var rowIds = solution.ids[row];
+        var rowCenters = solution.centers[row];
 
         assert leftIndex < rightIndex : String.format("Left index (%s) must be strictly smaller than right index (%s)", leftIndex, rightIndex);
         assert rightIndex < rowSize : String.format("Out of bounds, max is %s, given %s", rowSize, rightIndex);
         assert leftIndex >= 0 : String.format("Out of bounds, min is %s, given %s", 0, leftIndex);
 
-        var leftBox = rowData[leftIndex];
-        var rightBox = rowData[rightIndex];
-
-        double changedAreaStart = leftBox.lastCenter - leftBox.facility.width / 2.0D;
-        double newLeftCenter = changedAreaStart + rightBox.facility.width / 2.0D;
-        double newRightCenter = changedAreaStart + rightBox.facility.width + leftBox.facility.width / 2.0D;
-
-
-        // Distance moved, used absolute values
-        double distanceChangeRight2Left = rightBox.lastCenter - newLeftCenter;
-        double distanceChangeLeft2Right = newRightCenter - leftBox.lastCenter;
-        double costChange = 0;
-
-        /* AREAS EXPLANATION
-        0 ----------------> AREA 3  ----------------> RowSize
-        0 ----------------> AREA 3  ----------------> RowSize
-        0 --> AREA 1 | index | index + 1 | AREA 2 --> RowSize
-        0 ----------------> AREA 3  ----------------> RowSize
-        0 ----------------> AREA 3  ----------------> RowSize
-         */
-
-        // Area 1
-        for (int i = 0; i < leftIndex; i++) {
-            var otherbox = rowData[i];
-            // Left box moves right increases cost
-            costChange += distanceChangeLeft2Right * instance.getWeight(leftBox.facility, otherbox.facility);
-            // Right cost moves left decreases cost
-            costChange -= distanceChangeRight2Left * instance.getWeight(rightBox.facility, otherbox.facility);
-        }
-
-        // Area 2
-        for (int i = rightIndex + 1; i < rowSize; i++) {
-            var otherbox = rowData[i];
-            // Left box moves right decreases cost
-            costChange -= distanceChangeLeft2Right * instance.getWeight(leftBox.facility, otherbox.facility);
-            // Right cost moves left increases cost
-            costChange += distanceChangeRight2Left * instance.getWeight(rightBox.facility, otherbox.facility);
-        }
-
-        // Area 3: All rows different from current
-        for (int currentRow = 0; currentRow < solution.solutionData.length; currentRow++) {
-            if(currentRow == row) continue; // Current row already calculated by Area 1 and Area 2
-            for (int i = 0; i < solution.rowSize[currentRow]; i++) {
-                var otherBox = solution.solutionData[currentRow][i];
-                int leftBoxWeight = instance.getWeight(otherBox.facility, leftBox.facility);
-                double beforeLeftCost = Math.abs(otherBox.lastCenter - leftBox.lastCenter);
-                double afterLeftCost = Math.abs(otherBox.lastCenter - newRightCenter);
-
-                // Changed
-                costChange += (afterLeftCost - beforeLeftCost) * leftBoxWeight;
-
-                int rightBoxWeight = instance.getWeight(otherBox.facility, rightBox.facility);
-                double beforeRightCost = Math.abs(otherBox.lastCenter - rightBox.lastCenter);
-                double afterRightCost = Math.abs(otherBox.lastCenter - newLeftCenter);
-                costChange += (afterRightCost - beforeRightCost) * rightBoxWeight;
+        int leftId = rowIds[leftIndex];
+        int rightId = rowIds[rightIndex];
+        if(leftId < 0 && rightId < 0){
+            // Fake facilities do not have any weight, cost does not change
+            solution.swapConsecutive(row, leftIndex);
+            return 0;
+        }
+        long leftCenter = rowCenters[leftIndex];
+        long rightCenter = rowCenters[rightIndex];
+        long leftWidth = solution.width(leftId);
+        long rightWidth = solution.width(rightId);
+
+        long changedAreaStart = solution.prefixWidths[row][leftIndex];
+        long newLeftCenter = changedAreaStart + rightWidth / 2;
+        long newRightCenter = changedAreaStart + rightWidth + leftWidth / 2;
+
+        // Both boxes exchange their positions, so their distance does not change.
+        long costChange = 0;
+        if(solution.getInstance().isSparse()){
+            // Only partners with nonzero weight are visited, fake facilities do not have any weight
+            if(leftId >= 0){
+                costChange += DRFLPDeltaEvaluator.relocationDelta(solution, leftId, leftCenter, newRightCenter, rightId, false);
+            }
+            if(rightId >= 0){
+                costChange += DRFLPDeltaEvaluator.relocationDelta(solution, rightId, rightCenter, newLeftCenter, leftId, false);
+            }
+        } else {
+            // Same row cost from the cut weights of both facilities, O(1)
+            costChange += solution.consecutiveSwapRowDelta(row, leftIndex);
+            if(leftId >= 0){
+                costChange += crossRowDelta(solution, row, leftId, leftCenter, newRightCenter);
+            }
+            if(rightId >= 0){
+                costChange += crossRowDelta(solution, row, rightId, rightCenter, newLeftCenter);
             }
         }
 
-        // Do fake move
-        leftBox.lastCenter = newRightCenter;
-        rightBox.lastCenter = newLeftCenter;
+        // Do fake move, COST IS NOT UPDATED, but dont need to right?
+        solution.swapConsecutive(row, leftIndex);
 
-        // COST IS NOT UPDATED, but dont need to right?
-        rowData[leftIndex] = rightBox;
-        rowData[rightIndex] = leftBox;
+        return FixedPoint.toDouble(costChange);
+    }
 
-        return costChange;
+    /**
+     * Score change against the facilities of other rows if the real facility with the given id is moved
+     * from center to newCenter inside its row. The cost against each row is looked up in the cross-row
+     * profiles of the facility, which are valid as long as the other rows do not change, as in a sweep over a row.
+     */
+    private static long crossRowDelta(DRFLPSolution solution, int row, int id, long center, long newCenter) {
+        long delta = 0;
+        var profiles = solution.crossRowProfiles();
+        for (int otherRow = 0; otherRow < solution.realIds.length; otherRow++) {
+            if(otherRow != row){
+                delta += profiles.cost(solution, otherRow, id, newCenter) - profiles.cost(solution, otherRow, id, center);
+            }
+        }
+        return delta;
     }
 
     public static class MoveBySwap extends EagerMove<DRFLPSolution, DRFLPInstance> {
@@ -255,6 +316,13 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
             this.toRight = toRight;
         }
 
+        /**
+         * Same move for another solution with the same layout, such as a scratch copy of the solution it was generated for
+         */
+        MoveBySwap withSolution(DRFLPSolution solution) {
+            return new MoveBySwap(solution, rowOrigin, rowDest, indexOrig, indexDest, scoreChange, toRight);
+        }
+
         @Override
         public boolean isValid() {
             return true;
@@ -268,23 +336,15 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
 
         private static void move(DRFLPSolution solution, int row1, int index1, int row2, int index2, double score){
 
+            solution.updateScore(score);
             if(row1 == row2){
-                solution.cachedScore += score;
-                ArrayUtil.deleteAndInsert(solution.solutionData[row1], index1, index2);
-                solution.recalculateCentersInPlace(row1);
+                solution.moveInRow(row1, index1, index2);
             } else {
-                var value = ArrayUtil.remove(solution.solutionData[row1], index1);
-                ArrayUtil.insert(solution.solutionData[row2], index2, value);
-                solution.rowSize[row1]--;
-                solution.solutionData[row1][solution.rowSize[row1]] = null;
-                solution.rowSize[row2]++;
-                solution.cachedScore += score;
-                solution.recalculateCentersInPlace(row1);
-                solution.recalculateCentersInPlace(row2);
+                solution.moveToRow(row1, index1, row2, index2);
             }
 
             ValidationUtil.assertValidScore(solution);
-            assert DoubleComparator.isPositiveOrZero(solution.cachedScore) : "Cannot have negative score in this problem: " + solution.cachedScore;
+            assert DoubleComparator.isPositiveOrZero(solution.getScore()) : "Cannot have negative score in this problem: " + solution.getScore();
         }
 
         @Override
@@ -305,12 +365,12 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             MoveBySwap that = (MoveBySwap) o;
-            return rowOrigin == that.rowOrigin && rowDest == that.rowDest && indexOrig == that.indexOrig && indexDest == that.indexDest && Double.compare(that.scoreChange, scoreChange) == 0 && toRight == that.toRight;
+            return rowOrigin == that.rowOrigin && rowDest == that.rowDest && indexOrig == that.indexOrig && indexDest == that.indexDest && toRight == that.toRight;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(rowOrigin, rowDest, indexOrig, indexDest, scoreChange, toRight);
+            return Objects.hash(rowOrigin, rowDest, indexOrig, indexDest, toRight);
         }
 
 
@@ -338,48 +398,23 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
             this.score = moveCost(s, ri1, ri2);
         }
 
+        public HelperMove(DRFLPSolution s, DRFLPSolution.RowIndex ri1, DRFLPSolution.RowIndex ri2, double score) {
+            super(s);
+            this.ri1 = ri1;
+            this.ri2 = ri2;
+            this.score = score;
+        }
+
         @Override
         public boolean improves() {
             return DoubleComparator.isNegative(this.getValue());
         }
 
         public static double moveCost(DRFLPSolution solution, DRFLPSolution.RowIndex ri1, DRFLPSolution.RowIndex ri2) {
-
-            // Antes de hacer el movement
-            assert solution.equalsSolutionData(solution.recalculateCentersCopy());
-            double before = solution.getScore();
+            assert solution.centersAreValid();
             assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
 
-            double after;
-
-            if(ri1.row == ri2.row){
-                // Do movement
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri1.index, ri2.index);
-
-                // Despues de hacer el movimiento
-                after = solution.recalculateScore();
-
-                // Undo movement
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri2.index, ri1.index);
-
-                // Al deshacer el coste deberia quedar igual
-                solution.recalculateCentersInPlace(ri1.row);
-
-            } else {
-                var value = ArrayUtil.remove(solution.solutionData[ri1.row], ri1.index);
-                ArrayUtil.insert(solution.solutionData[ri2.row], ri2.index, value);
-                solution.rowSize[ri1.row]--;
-                solution.rowSize[ri2.row]++;
-                after = solution.recalculateScore();
-
-                value = ArrayUtil.remove(solution.solutionData[ri2.row], ri2.index);
-                ArrayUtil.insert(solution.solutionData[ri1.row], ri1.index, value);
-                solution.rowSize[ri1.row]++;
-                solution.rowSize[ri2.row]--;
-            }
-
-            assert DoubleComparator.equals(before, solution.recalculateScore());
-            return after - before;
+            return DRFLPDeltaEvaluator.moveCost(solution, ri1, ri2);
         }
 
         @Override
@@ -391,21 +426,14 @@ public class MoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighbor
         protected void _execute() {
             var solution = getSolution();
 
+            solution.updateScore(score);
             if(ri1.row == ri2.row){
-                solution.cachedScore += score;
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri1.index, ri2.index);
-                solution.recalculateCentersInPlace(ri1.row);
+                solution.moveInRow(ri1.row, ri1.index, ri2.index);
             } else {
-                var value = ArrayUtil.remove(solution.solutionData[ri1.row], ri1.index);
-                ArrayUtil.insert(solution.solutionData[ri2.row], ri2.index, value);
-                solution.rowSize[ri1.row]--;
-                solution.rowSize[ri2.row]++;
-                solution.cachedScore += this.score;
-                solution.recalculateCentersInPlace(ri1.row);
-                solution.recalculateCentersInPlace(ri2.row);
+                solution.moveToRow(ri1.row, ri1.index, ri2.row, ri2.index);
             }
 
-            assert DoubleComparator.isPositiveOrZero(solution.cachedScore) : "Cannot have negative score in this problem: " + solution.cachedScore;
+            assert DoubleComparator.isPositiveOrZero(solution.getScore()) : "Cannot have negative score in this problem: " + solution.getScore();
         }
 
         @Override
@@ -2,10 +2,12 @@ package es.urjc.etsii.grafo.drflp.model;
 
 import es.urjc.etsii.grafo.solution.RandomizableNeighborhood;
 import es.urjc.etsii.grafo.solution.neighborhood.LazyNeighborhood;
-import es.urjc.etsii.grafo.util.ArrayUtil;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 import es.urjc.etsii.grafo.util.random.RandomManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -14,99 +16,127 @@ import java.util.stream.Stream;
  */
 public class MoveNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSolution, DRFLPInstance> implements RandomizableNeighborhood<DRFLPBaseMove, DRFLPSolution, DRFLPInstance> {
 
+    // Restricts destinations to windows around the heaviest partners of each facility, null to evaluate all of them
+    private final Granularity granularity;
+
+    public MoveNeighborhood() {
+        this(null);
+    }
+
+    /**
+     * Create a granular move neighborhood, random moves are not restricted
+     * @param granularity destinations to evaluate for each facility, null to evaluate all of them
+     */
+    public MoveNeighborhood(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
     @Override
     public Stream<DRFLPBaseMove> stream(DRFLPSolution solution) {
         if(solution.allFacilitiesSize() <= 2){
             return Stream.empty();
         }
-        return buildStream(new MoveMove(solution,0, 1));
+        var destinations = granularity == null ? null : granularity.destinations(solution, false);
+        var first = MoveMove.first(solution, destinations, 0, 1);
+        return first == null ? Stream.empty() : buildStream(first);
     }
 
     @Override
     public Optional<DRFLPBaseMove> getRandomMove(DRFLPSolution solution) {
+        var moves = getRandomMoves(solution, 1, false);
+        return moves.isEmpty() ? Optional.empty() : Optional.of(moves.get(0));
+    }
+
+    /**
+     * Draw k random moves of the current solution, uniformly among the moves with a different origin and destination.
+     * Each move is evaluated in O(n), see DRFLPDeltaEvaluator.
+     * @param k number of moves
+     * @param lazy true to evaluate each move only when its value is requested or it is executed.
+     *             All the moves refer to the current solution, so at most one of them can be executed.
+     * @return random moves, may be repeated, empty if the solution does not have enough facilities
+     */
+    public List<DRFLPBaseMove> getRandomMoves(DRFLPSolution solution, int k, boolean lazy) {
         int nFacilities = solution.allFacilitiesSize();
-        var r = RandomManager.getRandom();
         if(nFacilities <= 2){
-            return Optional.empty();
+            return List.of();
         }
 
-        int origin = r.nextInt(nFacilities);
-        int destination = r.nextInt(nFacilities);
-        if(origin == destination){
-            return getRandomMove(solution);
+        var r = RandomManager.getRandom();
+        var moves = new ArrayList<DRFLPBaseMove>(k);
+        for (int i = 0; i < k; i++) {
+            int origin = r.nextInt(nFacilities);
+            // Skip origin instead of drawing again
+            int destination = r.nextInt(nFacilities - 1);
+            if(destination >= origin){
+                destination++;
+            }
+            moves.add(new MoveMove(solution, origin, destination, null, lazy));
         }
-        return Optional.of(new MoveMove(solution, origin, destination));
+        return moves;
     }
 
     protected static class MoveMove extends DRFLPBaseMove {
+        // Allowed destinations of each position in a granular stream, see Granularity.destinations, null if not granular
+        private final int[][] destinations;
+
         public MoveMove(DRFLPSolution solution, int index1, int index2) {
-            super(solution, index1, index2, moveCost(solution, index1, index2));
+            this(solution, index1, index2, null, false);
+        }
+
+        private MoveMove(DRFLPSolution solution, int index1, int index2, int[][] destinations, boolean lazy) {
+            super(solution, index1, index2, lazy ? NOT_EVALUATED : moveCost(solution, index1, index2));
+            this.destinations = destinations;
+        }
+
+        /**
+         * First move at or after (index1, index2) in stream order, only among the given destinations if not null,
+         * null if there is none
+         */
+        private static MoveMove first(DRFLPSolution solution, int[][] destinations, int index1, int index2) {
+            int nFacilities = solution.allFacilitiesSize();
+            while (index1 < nFacilities) {
+                if (destinations != null) {
+                    // Jump to the first allowed destination at or after index2
+                    int i = Arrays.binarySearch(destinations[index1], index2);
+                    i = i >= 0 ? i : -i - 1;
+                    index2 = i < destinations[index1].length ? destinations[index1][i] : nFacilities;
+                }
+                if (index2 >= nFacilities) {
+                    // Advance index1 and reset index2
+                    index1++;
+                    index2 = 0;
+                } else if (index1 == index2) {
+                    index2++;
+                } else {
+                    return new MoveMove(solution, index1, index2, destinations, false);
+                }
+            }
+            return null; // End of stream
         }
 
         public static double moveCost(DRFLPSolution solution, int position1, int position2) {
             var ri1 = solution.getRowIndexForPosition(position1);
             var ri2 = solution.getRowIndexForPosition(position2);
 
-            // Antes de hacer el movement
-            assert solution.equalsSolutionData(solution.recalculateCentersCopy());
-            double before = solution.getScore();
+            assert solution.centersAreValid();
             assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
 
-            double after;
-
-            if(ri1.row == ri2.row){
-                // Do movement
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri1.index, ri2.index);
-
-                // Despues de hacer el movimiento
-                after = solution.recalculateScore();
-
-                // Undo movement
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri2.index, ri1.index);
-
-                // Al deshacer el coste deberia quedar igual
-                solution.recalculateCentersInPlace(ri1.row);
-
-            } else {
-                var value = ArrayUtil.remove(solution.solutionData[ri1.row], ri1.index);
-                ArrayUtil.insert(solution.solutionData[ri2.row], ri2.index, value);
-                solution.rowSize[ri1.row]--;
-                solution.solutionData[ri1.row][solution.rowSize[ri1.row]] = null;
-                solution.rowSize[ri2.row]++;
-                after = solution.recalculateScore();
-
-                value = ArrayUtil.remove(solution.solutionData[ri2.row], ri2.index);
-                ArrayUtil.insert(solution.solutionData[ri1.row], ri1.index, value);
-                solution.rowSize[ri1.row]++;
-                solution.rowSize[ri2.row]--;
-                solution.solutionData[ri2.row][solution.rowSize[ri2.row]] = null;
-            }
+            return DRFLPDeltaEvaluator.moveCost(solution, ri1, ri2);
+        }
 
-            assert DoubleComparator.equals(before, solution.recalculateScore());
-            return after - before;
+        @Override
+        protected double evaluate() {
+            return moveCost(this.s, this.index1, this.index2);
         }
 
         @Override
         protected void _execute() {
-            this.move(this.index1, this.index2, this.score);
+            this.move(this.index1, this.index2, this.getValue());
         }
 
         @Override
         public MoveMove next() {
-            // Copy for new movement
-            int _index1 = index1, _index2 = index2;
-            _index2++;
-            if (_index2 >= s.allFacilitiesSize()) {
-                // Advance _index1 and reset _index2
-                _index1++;
-                _index2 = 0;
-                if (_index1 >= s.allFacilitiesSize()) {
-                    return null; // End of stream
-                }
-            }
-
-            var m = new MoveMove(this.s, _index1, _index2);
-            return _index1 == _index2 ? m.next() : m;
+            return first(this.s, this.destinations, this.index1, this.index2 + 1);
         }
 
 
@@ -117,29 +147,21 @@ public class MoveNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSolut
             var ri2 = solution.getRowIndexForPosition(position2);
 
             if(ri1.row == ri2.row){
-                solution.cachedScore += cost;
-                ArrayUtil.deleteAndInsert(solution.solutionData[ri1.row], ri1.index, ri2.index);
-                solution.recalculateCentersInPlace(ri1.row);
+                solution.updateScore(cost);
+                solution.moveInRow(ri1.row, ri1.index, ri2.index);
             } else {
-                var value = ArrayUtil.remove(solution.solutionData[ri1.row], ri1.index);
-                ArrayUtil.insert(solution.solutionData[ri2.row], ri2.index, value);
-                solution.rowSize[ri1.row]--;
-                solution.solutionData[ri1.row][solution.rowSize[ri1.row]] = null;
-
-                solution.rowSize[ri2.row]++;
-                solution.cachedScore += this.score;
-                solution.recalculateCentersInPlace(ri1.row);
-                solution.recalculateCentersInPlace(ri2.row);
+                solution.updateScore(this.getValue());
+                solution.moveToRow(ri1.row, ri1.index, ri2.row, ri2.index);
             }
 
-            assert DoubleComparator.isPositiveOrZero(solution.cachedScore) : "Cannot have negative score in this problem: " + solution.cachedScore;
+            assert DoubleComparator.isPositiveOrZero(solution.getScore()) : "Cannot have negative score in this problem: " + solution.getScore();
         }
 
         @Override
         public String toString() {
             var rowindex1 = s.getRowIndexForPosition(this.index1);
             var rowindex2 = s.getRowIndexForPosition(this.index2);
-            return String.format("(%s, %s) => (%s, %s); c=%s", rowindex1.row, rowindex1.index, rowindex2.row, rowindex2.index, this.score);
+            return String.format("(%s, %s) => (%s, %s); c=%s", rowindex1.row, rowindex1.index, rowindex2.row, rowindex2.index, this.getValue());
         }
     }
 }
@@ -0,0 +1,74 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Objective function kernel, evaluates the cost of every pair of real facilities.
+ * Works over compact arrays that only contain real facilities, fake facilities must be skipped when building them,
+ * and visits each pair only once (i < j). Centers are given in fixed point units stored as doubles, so they are integers.
+ * The scalar implementation multiplies and sums longs, so it is always exact. The vectorized one sums doubles,
+ * which is exact while every partial sum stays below 2^53.
+ * The vectorized implementation uses the incubating jdk.incubator.vector module, so it is only compiled with the
+ * vector Maven profile (mvn -Pvector package) and only used if the JVM is started with --add-modules jdk.incubator.vector.
+ * Otherwise the scalar implementation is used.
+ */
+final class ObjectiveKernel {
+
+    /**
+     * Pair cost implementation, see {@link #pairCost(DRFLPInstance, int[], double[], int)}
+     */
+    interface PairCost {
+        long pairCost(DRFLPInstance instance, int[] ids, double[] centers, int n);
+    }
+
+    private static final PairCost VECTOR = loadVectorKernel();
+
+    /**
+     * True if the vectorized implementation has been compiled and the vector API has been enabled
+     */
+    static final boolean VECTORIZED = VECTOR != null;
+
+    private ObjectiveKernel() {}
+
+    /**
+     * Load the vectorized implementation by name, as it does not exist unless compiled with the vector profile
+     * @return vectorized implementation, or null if it is not available
+     */
+    private static PairCost loadVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            var kernel = Class.forName(ObjectiveKernel.class.getPackageName() + ".VectorObjectiveKernel");
+            return (PairCost) kernel.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sum of weight * distance for every pair of facilities
+     * @param instance instance, used to get the weights
+     * @param ids ids of real facilities
+     * @param centers centers of each facility in fixed point units
+     * @param n number of facilities to use from both arrays
+     * @return total cost in fixed point units
+     */
+    static long pairCost(DRFLPInstance instance, int[] ids, double[] centers, int n) {
+        if (VECTORIZED) {
+            return VECTOR.pairCost(instance, ids, centers, n);
+        }
+        return scalarPairCost(instance, ids, centers, n);
+    }
+
+    static long scalarPairCost(DRFLPInstance instance, int[] ids, double[] centers, int n) {
+        var weights = instance.weights();
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            int offset = weights.rowOffset(ids[i]);
+            long center = (long) centers[i];
+            for (int j = i + 1; j < n; j++) {
+                total += Math.abs(center - (long) centers[j]) * weights.get(offset + ids[j]);
+            }
+        }
+        return total;
+    }
+}
@@ -1,7 +1,6 @@
 package es.urjc.etsii.grafo.drflp.model;
 
 import es.urjc.etsii.grafo.solution.neighborhood.LazyNeighborhood;
-import es.urjc.etsii.grafo.util.ArrayUtil;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 
 import java.util.stream.Stream;
@@ -23,35 +22,58 @@ public class OptNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSoluti
     protected static class OptMove extends DRFLPBaseMove {
 
         private final int row;
+        // Window used to evaluate this move, extended by the following one
+        private final ReversalWindow window;
 
         public OptMove(DRFLPSolution s, int row, int index1, int index2) {
-            super(s, index1, index2, twoOptCost(s, row, index1, index2));
+            this(s, row, window(s, row, index1, index2, null), index1, index2);
+        }
+
+        private OptMove(DRFLPSolution s, int row, ReversalWindow window, int index1, int index2) {
+            super(s, index1, index2, FixedPoint.toDouble(window.delta()));
             this.row = row;
+            this.window = window;
+            assert DoubleComparator.equals(this.score, twoOptCost(s, row, index1, index2));
         }
 
-        // Neighborhoods cost calculation and move execution
+        /**
+         * Window for the fragment [index1, index2], reusing the previous one if it ends just before index2
+         */
+        private static ReversalWindow window(DRFLPSolution s, int row, int index1, int index2, ReversalWindow previous) {
+            var window = previous != null && previous.precedes(row, index1, index2) ? previous : new ReversalWindow(s, row, index1);
+            while (window.to() < index2) {
+                window.extend();
+            }
+            return window;
+        }
+
+        // Neighborhoods cost calculation and move execution, reversing the fragment. Used to check the incremental evaluation
         private static double twoOptCost(DRFLPSolution solution, int row, int index1, int index2) {
             // Antes de hacer el movimiento
-            assert solution.equalsSolutionData(solution.recalculateCentersCopy());
+            assert solution.centersAreValid();
             double before = solution.partialCost(row, index1, index2);
 
             // Do movement
-            ArrayUtil.reverseFragment(solution.solutionData[row], index1, index2);
+            solution.reverseFragment(row, index1, index2);
 
             // Despues de hacer el movimiento
-            solution.recalculateCentersInPlace(row);
             double after = solution.partialCost(row, index1, index2);
 
             // Undo movement
-            ArrayUtil.reverseFragment(solution.solutionData[row], index1, index2);
+            solution.reverseFragment(row, index1, index2);
 
             // Al deshacer el coste deberia quedar igual
-            solution.recalculateCentersInPlace(row);
             assert DoubleComparator.equals(before, solution.partialCost(row, index1, index2));
 
             return after - before;
         }
 
+        @Override
+        protected double evaluate() {
+            // The window may have been extended by the following move, so reverse the fragment instead
+            return twoOptCost(this.s, this.row, this.index1, this.index2);
+        }
+
         @Override
         protected void _execute() {
             this.twoOpt(this.row, this.index1, this.index2, this.score);
@@ -71,15 +93,24 @@ public class OptNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSoluti
                 }
             }
 
-            return new OptMove(this.s, _row, _index1, _index2);
+            return new OptMove(this.s, _row, window(this.s, _row, _index1, _index2, this.window), _index1, _index2);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && row == ((OptMove) o).row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + row;
         }
 
         public void twoOpt(int row, int index1, int index2, double cost) {
             var solution = getSolution();
-            solution.cachedScore += cost;
-            ArrayUtil.reverseFragment(solution.solutionData[row], index1, index2);
-            solution.recalculateCentersInPlace(row);
-            assert DoubleComparator.isPositiveOrZero(solution.cachedScore) : "Cannot have negative score in this problem: " + solution.cachedScore;
+            solution.updateScore(cost);
+            solution.reverseFragment(row, index1, index2);
+            assert DoubleComparator.isPositiveOrZero(solution.getScore()) : "Cannot have negative score in this problem: " + solution.getScore();
         }
     }
 }
@@ -0,0 +1,134 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import es.urjc.etsii.grafo.solution.neighborhood.EagerNeighborhood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Move by swap neighborhood for best improvement local searches, scanned in parallel.
+ * Positions are split in a few chunks per worker of the pool, each chunk sweeping its facilities on its own scratch copy
+ * of the solution, created when the chunk starts and discarded when it ends, so nothing is kept between scans.
+ * Only the best move is returned, the first one in the order of MoveBySwapNeighborhood if there are ties,
+ * so the local search follows the same path.
+ * Useful when a single local search runs on a large instance and there are idle cores,
+ * nested inside a parallel multistart it only adds overhead.
+ */
+public class ParallelMoveBySwapNeighborhood extends EagerNeighborhood<MoveBySwapNeighborhood.MoveBySwap, DRFLPSolution, DRFLPInstance> {
+
+    // Chunks per worker, more than one so idle workers can steal from busy ones
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private final Granularity granularity;
+
+    /**
+     * Scan using a dedicated fork/join pool with the given number of workers
+     * @param parallelism number of workers
+     */
+    public ParallelMoveBySwapNeighborhood(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    /**
+     * Scan using the given pool
+     * @param pool fork/join pool
+     */
+    public ParallelMoveBySwapNeighborhood(ForkJoinPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * Scan using the given pool, only evaluating the destinations allowed by granularity
+     * @param pool fork/join pool
+     * @param granularity destinations to evaluate for each facility, null to evaluate all of them
+     */
+    public ParallelMoveBySwapNeighborhood(ForkJoinPool pool, Granularity granularity) {
+        this.pool = pool;
+        this.granularity = granularity;
+    }
+
+    @Override
+    public List<MoveBySwapNeighborhood.MoveBySwap> getMovements(DRFLPSolution solution) {
+        var scan = new Scan(solution, pool.getParallelism() * CHUNKS_PER_WORKER);
+        var best = pool.invoke(new ScanTask(scan, 0, scan.rowStart[solution.getNRows()]));
+        return best == null ? List.of() : List.of(best.withSolution(solution));
+    }
+
+    /**
+     * Positions of a solution being scanned, all rows concatenated
+     */
+    private static class Scan {
+        private final DRFLPSolution solution;
+        private final int[] rowStart;
+        // Positions swept by each chunk
+        private final int chunkSize;
+
+        private Scan(DRFLPSolution solution, int chunks) {
+            this.solution = solution;
+            this.rowStart = new int[solution.getNRows() + 1];
+            for (int row = 0; row < solution.getNRows(); row++) {
+                rowStart[row + 1] = rowStart[row] + solution.getRowSize(row);
+            }
+            this.chunkSize = Math.max(1, (rowStart[solution.getNRows()] + chunks - 1) / chunks);
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<MoveBySwapNeighborhood.MoveBySwap> {
+        private final Scan scan;
+        private final int from, to;
+
+        private ScanTask(Scan scan, int from, int to) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MoveBySwapNeighborhood.MoveBySwap compute() {
+            if (to - from <= scan.chunkSize) {
+                return sweep();
+            }
+            int mid = (from + to) >>> 1;
+            var left = new ScanTask(scan, from, mid);
+            var right = new ScanTask(scan, mid, to);
+            left.fork();
+            var rightBest = right.compute();
+            var leftBest = left.join();
+            // Keep the first move on ties
+            if (leftBest == null || rightBest != null && rightBest.getValue() < leftBest.getValue()) {
+                return rightBest;
+            }
+            return leftBest;
+        }
+
+        private MoveBySwapNeighborhood.MoveBySwap sweep() {
+            // Sweeps restore the solution after generating their moves, so the copy stays valid during the whole chunk
+            var solution = new DRFLPSolution(scan.solution);
+            var moves = new ArrayList<MoveBySwapNeighborhood.MoveBySwap>();
+            MoveBySwapNeighborhood.MoveBySwap best = null;
+            int row = 0;
+            for (int i = from; i < to; i++) {
+                while (scan.rowStart[row + 1] <= i) {
+                    row++;
+                }
+                int position = i - scan.rowStart[row];
+                if (MoveBySwapNeighborhood.redundantPosition(solution, row, position)) {
+                    continue;
+                }
+                for (int step = 0; step < solution.getNRows(); step++) {
+                    moves.clear();
+                    MoveBySwapNeighborhood.generateSweepMoves(moves, solution, row, position, MoveBySwapNeighborhood.sweepRow(row, step), granularity);
+                    for (var move : moves) {
+                        if (best == null || move.getValue() < best.getValue()) {
+                            best = move;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
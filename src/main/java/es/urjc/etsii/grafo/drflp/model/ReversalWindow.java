@@ -0,0 +1,127 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Incremental evaluation of reversing the fragment [from, to] of a row, that can be extended one position at a time.
+ * Reversing a fragment mirrors the centers of its facilities around the middle of the fragment, so the distances
+ * between facilities of the fragment do not change, only their distances to the rest of the solution.
+ * Against the facilities of the same row, the cost change of each facility only depends on its displacement and on
+ * the weight to both sides of the fragment, obtained from the cut weights of the solution. Running sums make the
+ * same row part O(1) per fragment after an O(k) extension. Against other rows the cross-row profiles are used,
+ * O(k log n) per fragment. Does not modify the solution, which must not change while the window is used.
+ */
+final class ReversalWindow {
+
+    private final DRFLPSolution solution;
+    private final int row;
+    private final int from;
+    private int to;
+    // Start of the fragment and total width, fixed point units
+    private final long start;
+    private long width;
+
+    // Real facilities of the fragment: ids, centers and cost against other rows at their current center
+    private final int[] members;
+    private final long[] centers;
+    private final long[] crossCost;
+    private int nMembers = 0;
+
+    // Sum of (left - right) weights of the members against the rest of the row, and the same weighted by center.
+    // Left and right weights exclude the fragment, pair sums are over the pairs of members.
+    private long sideWeights, sideMoments;
+    private long pairWeights, pairMoments;
+
+    /**
+     * Create an empty window starting at the given position
+     */
+    ReversalWindow(DRFLPSolution solution, int row, int from) {
+        this.solution = solution;
+        this.row = row;
+        this.from = from;
+        this.to = from - 1;
+        this.start = solution.prefixWidths[row][from];
+        int capacity = solution.realCount[row];
+        this.members = new int[capacity];
+        this.centers = new long[capacity];
+        this.crossCost = new long[capacity];
+    }
+
+    /**
+     * Last position of the fragment, inclusive
+     */
+    int to() {
+        return to;
+    }
+
+    /**
+     * Add the next position of the row to the fragment
+     */
+    void extend() {
+        to++;
+        assert to < solution.rowSize[row];
+        int id = solution.ids[row][to];
+        width += solution.width(id);
+        if (id < 0) {
+            // Fake facilities do not have any weight
+            return;
+        }
+
+        long center = solution.centers[row][to];
+        var weights = solution.getInstance().weights();
+        int offset = weights.rowOffset(id);
+        long weight = 0, moment = 0;
+        for (int k = 0; k < nMembers; k++) {
+            long w = weights.get(offset + members[k]);
+            weight += w;
+            moment += w * centers[k];
+        }
+        pairWeights += weight;
+        pairMoments += moment + weight * center;
+
+        // All the members are to the left of the new one
+        long left = solution.leftWeight[id] - weight;
+        long side = 2 * left - solution.rowWeight[id];
+        sideWeights += side;
+        sideMoments += side * center;
+
+        long cross = 0;
+        var profiles = solution.crossRowProfiles();
+        for (int otherRow = 0; otherRow < solution.ids.length; otherRow++) {
+            if (otherRow != row) {
+                cross += profiles.cost(solution, otherRow, id, center);
+            }
+        }
+        members[nMembers] = id;
+        centers[nMembers] = center;
+        crossCost[nMembers] = cross;
+        nMembers++;
+    }
+
+    /**
+     * Cost change of reversing the current fragment
+     * @return score change in fixed point units
+     */
+    long delta() {
+        // Each member moves from c to mirror - c, and its (left - right) weight includes the pairs inside the fragment
+        long mirror = 2 * start + width;
+        long delta = mirror * (sideWeights + 2 * pairWeights) - 2 * (sideMoments + pairMoments);
+
+        var profiles = solution.crossRowProfiles();
+        for (int k = 0; k < nMembers; k++) {
+            long cross = 0;
+            for (int otherRow = 0; otherRow < solution.ids.length; otherRow++) {
+                if (otherRow != row) {
+                    cross += profiles.cost(solution, otherRow, members[k], mirror - centers[k]);
+                }
+            }
+            delta += cross - crossCost[k];
+        }
+        return delta;
+    }
+
+    /**
+     * Check if this window can be extended to evaluate the given fragment
+     */
+    boolean precedes(int row, int index1, int index2) {
+        return this.row == row && this.from == index1 && this.to + 1 == index2;
+    }
+}
@@ -5,99 +5,134 @@ import es.urjc.etsii.grafo.solution.neighborhood.LazyNeighborhood;
 import es.urjc.etsii.grafo.util.DoubleComparator;
 import es.urjc.etsii.grafo.util.random.RandomManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 public class SwapNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSolution, DRFLPInstance> implements RandomizableNeighborhood<DRFLPBaseMove, DRFLPSolution, DRFLPInstance> {
 
+    // Restricts swaps to facilities near the heaviest partners of each other, null to evaluate all of them
+    private final Granularity granularity;
+
+    public SwapNeighborhood() {
+        this(null);
+    }
+
+    /**
+     * Create a granular swap neighborhood, random moves are not restricted
+     * @param granularity pairs to evaluate, null to evaluate all of them
+     */
+    public SwapNeighborhood(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
     @Override
     public Stream<DRFLPBaseMove> stream(DRFLPSolution solution) {
         // Assume first row has at least two elements
         if(solution.allFacilitiesSize() <= 2){
             return Stream.empty();
         }
-        return buildStream(new SwapMove(solution, 0, 1));
+        var destinations = granularity == null ? null : granularity.destinations(solution, true);
+        var first = SwapMove.first(solution, destinations, 0, 1);
+        return first == null ? Stream.empty() : buildStream(first);
     }
 
     @Override
     public Optional<DRFLPBaseMove> getRandomMove(DRFLPSolution solution) {
+        var moves = getRandomMoves(solution, 1, false);
+        return moves.isEmpty() ? Optional.empty() : Optional.of(moves.get(0));
+    }
+
+    /**
+     * Draw k random swaps of the current solution, uniformly among the pairs of different facilities.
+     * Each swap is evaluated in O(n), see DRFLPDeltaEvaluator.
+     * @param k number of swaps
+     * @param lazy true to evaluate each swap only when its value is requested or it is executed.
+     *             All the swaps refer to the current solution, so at most one of them can be executed.
+     * @return random swaps, may be repeated, empty if the solution does not have enough facilities
+     */
+    public List<DRFLPBaseMove> getRandomMoves(DRFLPSolution solution, int k, boolean lazy) {
         int nFacilities = solution.allFacilitiesSize();
-        var r = RandomManager.getRandom();
         if(nFacilities <= 2){
-            return Optional.empty();
+            return List.of();
         }
 
-        int origin = r.nextInt(nFacilities);
-        int destination = r.nextInt(nFacilities);
-        if(origin == destination){
-            return getRandomMove(solution);
+        var r = RandomManager.getRandom();
+        var moves = new ArrayList<DRFLPBaseMove>(k);
+        for (int i = 0; i < k; i++) {
+            int origin = r.nextInt(nFacilities);
+            // Skip origin instead of drawing again
+            int destination = r.nextInt(nFacilities - 1);
+            if(destination >= origin){
+                destination++;
+            }
+            moves.add(new SwapMove(solution, origin, destination, null, lazy));
         }
-        return Optional.of(new SwapNeighborhood.SwapMove(solution, origin, destination));
+        return moves;
     }
 
     public static class SwapMove extends DRFLPBaseMove {
+        // Greater positions each position may be swapped with in a granular stream, see Granularity.destinations, null if not granular
+        private final int[][] destinations;
+
         public SwapMove(DRFLPSolution s, int index1, int index2) {
-            super(s, index1, index2, swapCost(s, index1, index2));
+            this(s, index1, index2, null, false);
         }
 
-        private static double swapCost(DRFLPSolution solution, int position1, int position2) {
+        private SwapMove(DRFLPSolution s, int index1, int index2, int[][] destinations, boolean lazy) {
+            super(s, index1, index2, lazy ? NOT_EVALUATED : swapCost(s, index1, index2));
+            this.destinations = destinations;
+        }
+
+        /**
+         * First swap at or after (index1, index2) in stream order, only among the given destinations if not null,
+         * null if there is none
+         */
+        private static SwapMove first(DRFLPSolution solution, int[][] destinations, int index1, int index2) {
+            int nFacilities = solution.allFacilitiesSize();
+            while (index1 < nFacilities) {
+                if (destinations != null) {
+                    // Jump to the first allowed pair at or after index2
+                    int i = Arrays.binarySearch(destinations[index1], index2);
+                    i = i >= 0 ? i : -i - 1;
+                    index2 = i < destinations[index1].length ? destinations[index1][i] : nFacilities;
+                }
+                if (index2 >= nFacilities) {
+                    // Advance index1 and reset index2
+                    index1++;
+                    index2 = index1 + 1;
+                } else {
+                    return new SwapMove(solution, index1, index2, destinations, false);
+                }
+            }
+            return null; // End of stream
+        }
 
+        private static double swapCost(DRFLPSolution solution, int position1, int position2) {
             var ri1 = solution.getRowIndexForPosition(position1);
             var ri2 = solution.getRowIndexForPosition(position2);
 
-            // Antes de hacer el movimiento
-            assert solution.equalsSolutionData(solution.recalculateCentersCopy());
-            double before = solution.getScore();
+            assert solution.centersAreValid();
             assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
 
-            // Do movement
-            var temp = solution.solutionData[ri1.row][ri1.index];
-            solution.solutionData[ri1.row][ri1.index] = solution.solutionData[ri2.row][ri2.index];
-            solution.solutionData[ri2.row][ri2.index] = temp;
-
-            // Despues de hacer el movimiento
-            // todo: if row1 == row2 skip second call
-            solution.recalculateCentersInPlace(ri1.row);
-            solution.recalculateCentersInPlace(ri2.row);
-
-            double after = solution.recalculateScore();
-
-            // Undo movement
-            temp = solution.solutionData[ri1.row][ri1.index];
-            solution.solutionData[ri1.row][ri1.index] = solution.solutionData[ri2.row][ri2.index];
-            solution.solutionData[ri2.row][ri2.index] = temp;
-
-            // todo: if row1 == row2 skip second call
-            solution.recalculateCentersInPlace(ri1.row);
-            solution.recalculateCentersInPlace(ri2.row);
-
-            // Al deshacer el coste deberia quedar igual
-            assert DoubleComparator.equals(before, solution.recalculateScore());
-            assert DoubleComparator.equals(solution.getScore(), solution.recalculateScore());
+            return DRFLPDeltaEvaluator.swapCost(solution, ri1, ri2);
+        }
 
-            return after - before;
+        @Override
+        protected double evaluate() {
+            return swapCost(this.s, this.index1, this.index2);
         }
 
         @Override
         protected void _execute() {
-            this.swap(this.index1, this.index2, this.score);
+            this.swap(this.index1, this.index2, this.getValue());
         }
 
         @Override
         public SwapMove next() {
-            // Copy for new movement
-            int _index1 = index1, _index2 = index2;
-            _index2++;
-            if (_index2 >= s.allFacilitiesSize()) {
-                // Advance _index1 and reset _index2
-                _index1++;
-                _index2 = _index1 + 1;
-                if (_index2 >= s.allFacilitiesSize()) {
-                    return null; // End of stream
-                }
-            }
-
-            return new SwapMove(this.s, _index1, _index2);
+            return first(this.s, this.destinations, this.index1, this.index2 + 1);
         }
 
         private void swap(int position1, int position2, double cost) {
@@ -105,15 +140,9 @@ public class SwapNeighborhood extends LazyNeighborhood<DRFLPBaseMove, DRFLPSolut
             var ri2 = this.s.getRowIndexForPosition(position2);
 
             var solution = getSolution();
-            solution.cachedScore += cost;
-            var temp = solution.solutionData[ri1.row][ri1.index];
-            solution.solutionData[ri1.row][ri1.index] = solution.solutionData[ri2.row][ri2.index];
-            solution.solutionData[ri2.row][ri2.index] = temp;
-
-            // todo: if row1 == row2 skip second call
-            solution.recalculateCentersInPlace(ri1.row);
-            solution.recalculateCentersInPlace(ri2.row);
-            assert DoubleComparator.isPositiveOrZero(solution.cachedScore) : "Cannot have negative score in this problem: " + solution.cachedScore;
+            solution.updateScore(cost);
+            solution.swapFacilities(ri1.row, ri1.index, ri2.row, ri2.index);
+            assert DoubleComparator.isPositiveOrZero(solution.getScore()) : "Cannot have negative score in this problem: " + solution.getScore();
         }
     }
 }
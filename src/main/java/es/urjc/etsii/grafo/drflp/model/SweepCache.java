@@ -0,0 +1,187 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import java.util.Arrays;
+
+/**
+ * Best move of each sweep of MoveBySwapNeighborhood, kept between local search iterations, and don't look bits.
+ * The value of sweeping the facility at (row, position) across a target row only depends on the contents of both rows
+ * and on the centers of the partners of their facilities. A row is dirty if its contents changed since the last scan,
+ * or if any of its facilities has nonzero weight with a facility whose center moved. Each time a row gets dirty its version
+ * is increased, and a cached sweep is only reused while the versions of both of its rows are the ones it was computed with.
+ * Clean rows keep their contents, so the positions stored in the cached moves are still valid.
+ * The look bit of a facility is set when its center moves or the center of any of its partners moves,
+ * fake facilities have no partners so they are looked again when their row gets dirty.
+ * Look bits are cleared by the neighborhood when none of the moves of the facility improves.
+ * Only useful on sparse instances: on dense ones every row is dirty after any move of a real facility.
+ */
+final class SweepCache {
+
+    private static final long NOT_CACHED = -1;
+    private static final int NEVER_SEEN = -2;
+
+    private final int nRows;
+    // Rows: version of each row, and its contents when the sweeps were last scanned
+    private final int[] versions;
+    private final int[][] rowIds;
+    private final int[] rowSizes;
+    private final boolean[] dirty;
+
+    // Facility slot, see DRFLPSolution.slot: row and center when the sweeps were last scanned, and look bit
+    private int[] slotRow = new int[0];
+    private long[] slotCenter = new long[0];
+    private int[] currentRow = new int[0];
+    private long[] currentCenter = new long[0];
+    private boolean[] look = new boolean[0];
+
+    // Row * (Position * nRows + step): best move of each sweep, may be null if the sweep has no moves,
+    // and versions of the origin and target rows when it was computed
+    private final MoveBySwapNeighborhood.MoveBySwap[][] moves;
+    private final long[][] keys;
+
+    SweepCache(int nRows) {
+        this.nRows = nRows;
+        this.versions = new int[nRows];
+        this.rowIds = new int[nRows][0];
+        this.rowSizes = new int[nRows];
+        Arrays.fill(this.rowSizes, -1);
+        this.dirty = new boolean[nRows];
+        this.moves = new MoveBySwapNeighborhood.MoveBySwap[nRows][0];
+        this.keys = new long[nRows][0];
+    }
+
+    /**
+     * Compare the solution with the last scanned state, invalidate the sweeps of every dirty row and update the look bits.
+     * Must be called before each scan, while the solution is not being modified by a sweep.
+     * @param solution solution to scan, its instance must be sparse
+     */
+    void refresh(DRFLPSolution solution) {
+        var instance = solution.getInstance();
+        assert instance.isSparse() : "Sweeps are only cached on sparse instances";
+        int n = instance.getNRealFacilities();
+        ensureCapacity(solution, n + solution.fakeWidths.length);
+        Arrays.fill(this.dirty, false);
+
+        // Rows whose contents changed
+        Arrays.fill(currentRow, DRFLPSolution.UNASSIGNED);
+        for (int row = 0; row < nRows; row++) {
+            int size = solution.rowSize[row];
+            var ids = solution.ids[row];
+            if (size != rowSizes[row] || !Arrays.equals(ids, 0, size, rowIds[row], 0, size)) {
+                dirty[row] = true;
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = solution.slot(ids[i]);
+                currentRow[slot] = row;
+                currentCenter[slot] = solution.centers[row][i];
+            }
+        }
+
+        // Facilities whose center moved, or that have been added or removed, change the cost of their partners
+        var start = instance.neighborStart();
+        var neighbors = instance.neighbors();
+        for (int slot = 0; slot < currentRow.length; slot++) {
+            if (currentRow[slot] == slotRow[slot] && currentCenter[slot] == slotCenter[slot]) {
+                continue;
+            }
+            look[slot] = true;
+            if (slot >= n) {
+                // Fake facilities do not have any weight
+                continue;
+            }
+            for (int e = start[slot]; e < start[slot + 1]; e++) {
+                int partner = neighbors[e];
+                look[partner] = true;
+                if (currentRow[partner] != DRFLPSolution.UNASSIGNED) {
+                    dirty[currentRow[partner]] = true;
+                }
+            }
+        }
+
+        // Fake facilities have no partners, but their moves shift the facilities of their row
+        for (int row = 0; row < nRows; row++) {
+            if (!dirty[row]) {
+                continue;
+            }
+            for (int i = 0; i < solution.rowSize[row]; i++) {
+                if (solution.ids[row][i] < 0) {
+                    look[solution.slot(solution.ids[row][i])] = true;
+                }
+            }
+        }
+
+        // Store current state
+        for (int row = 0; row < nRows; row++) {
+            if (!dirty[row]) {
+                continue;
+            }
+            versions[row]++;
+            int size = solution.rowSize[row];
+            if (rowIds[row].length < size) {
+                rowIds[row] = new int[solution.ids[row].length];
+            }
+            System.arraycopy(solution.ids[row], 0, rowIds[row], 0, size);
+            rowSizes[row] = size;
+        }
+        System.arraycopy(currentRow, 0, slotRow, 0, currentRow.length);
+        System.arraycopy(currentCenter, 0, slotCenter, 0, currentCenter.length);
+    }
+
+    private void ensureCapacity(DRFLPSolution solution, int nSlots) {
+        if (slotRow.length < nSlots) {
+            int old = slotRow.length;
+            slotRow = Arrays.copyOf(slotRow, nSlots);
+            Arrays.fill(slotRow, old, nSlots, NEVER_SEEN);
+            slotCenter = Arrays.copyOf(slotCenter, nSlots);
+            currentRow = new int[nSlots];
+            currentCenter = new long[nSlots];
+            look = Arrays.copyOf(look, nSlots);
+        }
+        for (int row = 0; row < nRows; row++) {
+            int capacity = solution.ids[row].length * nRows;
+            if (keys[row].length < capacity) {
+                int old = keys[row].length;
+                moves[row] = Arrays.copyOf(moves[row], capacity);
+                keys[row] = Arrays.copyOf(keys[row], capacity);
+                Arrays.fill(keys[row], old, capacity, NOT_CACHED);
+            }
+        }
+    }
+
+    private long key(int row, int target) {
+        return ((long) versions[row] << 32) | versions[target];
+    }
+
+    /**
+     * Check if the given sweep is cached and still valid
+     */
+    boolean isValid(int row, int position, int step, int target) {
+        return keys[row][position * nRows + step] == key(row, target);
+    }
+
+    /**
+     * Best move of a valid cached sweep, null if the sweep did not generate any move
+     */
+    MoveBySwapNeighborhood.MoveBySwap get(int row, int position, int step) {
+        return moves[row][position * nRows + step];
+    }
+
+    void put(int row, int position, int step, int target, MoveBySwapNeighborhood.MoveBySwap best) {
+        int index = position * nRows + step;
+        moves[row][index] = best;
+        keys[row][index] = key(row, target);
+    }
+
+    /**
+     * Check if the moves of the given facility slot must be evaluated
+     */
+    boolean look(int slot) {
+        return look[slot];
+    }
+
+    /**
+     * Skip the given facility slot until its center or the center of any of its partners moves
+     */
+    void dontLook(int slot) {
+        look[slot] = false;
+    }
+}
@@ -0,0 +1,80 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized implementation of ObjectiveKernel. Weights are gathered from the weight matrix using the facility ids
+ * and converted to double, which is exact for integer values.
+ * Only compiled with the vector Maven profile, and loaded by name if the jdk.incubator.vector module is available,
+ * see ObjectiveKernel.VECTORIZED
+ */
+final class VectorObjectiveKernel implements ObjectiveKernel.PairCost {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Gather species for each weight type, at least as many lanes as DOUBLES. Narrow types gather more lanes
+    // than DOUBLES when the smallest vector shape is wider than needed, and are converted in several parts.
+    private static final VectorSpecies<Byte> BYTES = species(byte.class, Byte.SIZE);
+    private static final VectorSpecies<Short> SHORTS = species(short.class, Short.SIZE);
+    private static final VectorSpecies<Integer> INTS = species(int.class, Integer.SIZE);
+
+    VectorObjectiveKernel() {}
+
+    private static <E> VectorSpecies<E> species(Class<E> type, int bits) {
+        int minBits = VectorShape.S_64_BIT.vectorBitSize();
+        return VectorSpecies.of(type, VectorShape.forBitSize(Math.max(minBits, DOUBLES.length() * bits)));
+    }
+
+    @Override
+    public long pairCost(DRFLPInstance instance, int[] ids, double[] centers, int n) {
+        var weights = instance.weights();
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            int offset = weights.rowOffset(ids[i]);
+            double center = centers[i];
+            int j = i + 1;
+            var acc = DoubleVector.zero(DOUBLES);
+            if (weights.bytes() != null) {
+                for (int lanes = BYTES.length(); j <= n - lanes; j += lanes) {
+                    var w = ByteVector.fromArray(BYTES, weights.bytes(), offset, ids, j);
+                    for (int part = 0; part < lanes / DOUBLES.length(); part++) {
+                        var wd = (DoubleVector) w.convertShape(VectorOperators.B2D, DOUBLES, part);
+                        acc = accumulate(acc, wd, centers, center, j + part * DOUBLES.length());
+                    }
+                }
+            } else if (weights.shorts() != null) {
+                for (int lanes = SHORTS.length(); j <= n - lanes; j += lanes) {
+                    var w = ShortVector.fromArray(SHORTS, weights.shorts(), offset, ids, j);
+                    for (int part = 0; part < lanes / DOUBLES.length(); part++) {
+                        var wd = (DoubleVector) w.convertShape(VectorOperators.S2D, DOUBLES, part);
+                        acc = accumulate(acc, wd, centers, center, j + part * DOUBLES.length());
+                    }
+                }
+            } else {
+                for (int lanes = INTS.length(); j <= n - lanes; j += lanes) {
+                    var w = IntVector.fromArray(INTS, weights.ints(), offset, ids, j);
+                    for (int part = 0; part < lanes / DOUBLES.length(); part++) {
+                        var wd = (DoubleVector) w.convertShape(VectorOperators.I2D, DOUBLES, part);
+                        acc = accumulate(acc, wd, centers, center, j + part * DOUBLES.length());
+                    }
+                }
+            }
+            total += acc.reduceLanes(VectorOperators.ADD);
+            // Tail
+            for (; j < n; j++) {
+                total += Math.abs(center - centers[j]) * weights.get(offset + ids[j]);
+            }
+        }
+        return (long) total;
+    }
+
+    private static DoubleVector accumulate(DoubleVector acc, DoubleVector weights, double[] centers, double center, int from) {
+        var distance = DoubleVector.fromArray(DOUBLES, centers, from).sub(center).abs();
+        return acc.add(distance.mul(weights));
+    }
+}
@@ -0,0 +1,150 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+/**
+ * Weight matrix stored as a single flattened n x n array, using the narrowest element type (byte, short or int)
+ * that can hold every weight. The weight between i and j is at index i * n + j.
+ * Benchmark instances only need bytes, so the matrix takes a quarter of the memory of an int[][] and stays in cache.
+ */
+abstract sealed class WeightMatrix {
+
+    private final int n;
+
+    private WeightMatrix(int n) {
+        this.n = n;
+    }
+
+    /**
+     * Copy the given weights using the narrowest element type that can hold all of them
+     * @param weights n x n weight matrix
+     * @return packed weight matrix
+     */
+    static WeightMatrix of(int[][] weights) {
+        int min = 0, max = 0;
+        for (int[] row : weights) {
+            for (int w : row) {
+                min = Math.min(min, w);
+                max = Math.max(max, w);
+            }
+        }
+        if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) {
+            return new Bytes(weights);
+        }
+        if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) {
+            return new Shorts(weights);
+        }
+        return new Ints(weights);
+    }
+
+    /**
+     * Weight between facilities i and j
+     */
+    final int get(int i, int j) {
+        return get(i * n + j);
+    }
+
+    /**
+     * Index of the first weight of the given facility, the weight to facility j is at rowOffset(i) + j
+     */
+    final int rowOffset(int i) {
+        return i * n;
+    }
+
+    /**
+     * Weight at the given flattened index
+     */
+    abstract int get(int index);
+
+    /**
+     * Flattened weights if stored as bytes, null otherwise. The array must not be modified.
+     */
+    byte[] bytes() {
+        return null;
+    }
+
+    /**
+     * Flattened weights if stored as shorts, null otherwise. The array must not be modified.
+     */
+    short[] shorts() {
+        return null;
+    }
+
+    /**
+     * Flattened weights if stored as ints, null otherwise. The array must not be modified.
+     */
+    int[] ints() {
+        return null;
+    }
+
+    private static final class Bytes extends WeightMatrix {
+        private final byte[] data;
+
+        private Bytes(int[][] weights) {
+            super(weights.length);
+            int n = weights.length;
+            this.data = new byte[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    data[i * n + j] = (byte) weights[i][j];
+                }
+            }
+        }
+
+        @Override
+        int get(int index) {
+            return data[index];
+        }
+
+        @Override
+        byte[] bytes() {
+            return data;
+        }
+    }
+
+    private static final class Shorts extends WeightMatrix {
+        private final short[] data;
+
+        private Shorts(int[][] weights) {
+            super(weights.length);
+            int n = weights.length;
+            this.data = new short[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    data[i * n + j] = (short) weights[i][j];
+                }
+            }
+        }
+
+        @Override
+        int get(int index) {
+            return data[index];
+        }
+
+        @Override
+        short[] shorts() {
+            return data;
+        }
+    }
+
+    private static final class Ints extends WeightMatrix {
+        private final int[] data;
+
+        private Ints(int[][] weights) {
+            super(weights.length);
+            int n = weights.length;
+            this.data = new int[n * n];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(weights[i], 0, data, i * n, n);
+            }
+        }
+
+        @Override
+        int get(int index) {
+            return data[index];
+        }
+
+        @Override
+        int[] ints() {
+            return data;
+        }
+    }
+}
@@ -67,22 +67,21 @@ public class IRSDestructive extends Destructive<DRFLPSolution, DRFLPInstance> {
         };
 
         var pieces = solution.getPendingPieces();
-        pieces.add(new Piece(data1, DRFLPSolution.evaluate(instance, data1, 0.5), null, null)); // todo chapuza 0.5 hardcoded
-        pieces.add(new Piece(data2, DRFLPSolution.evaluate(instance, data2, 0.5), null, null)); // todo chapuza 0.5 hardcoded
-        pieces.add(new Piece(data3, DRFLPSolution.evaluate(instance, data3, 0.5), null, null)); // todo chapuza 0.5 hardcoded
+        pieces.add(new Piece(instance, 0.5, data1, DRFLPSolution.evaluate(instance, data1, 0.5))); // todo chapuza 0.5 hardcoded
+        pieces.add(new Piece(instance, 0.5, data2, DRFLPSolution.evaluate(instance, data2, 0.5))); // todo chapuza 0.5 hardcoded
+        pieces.add(new Piece(instance, 0.5, data3, DRFLPSolution.evaluate(instance, data3, 0.5))); // todo chapuza 0.5 hardcoded
 
         solution.deassignAll();
         return solution;
     }
 
     private int[][] toIds(DRFLPSolution solution) {
-        var facilities = solution.getSolutionData();
-        int[][] result = new int[facilities.length][];
-        for (int i = 0; i < facilities.length; i++) {
+        int[][] result = new int[solution.getNRows()][];
+        for (int i = 0; i < result.length; i++) {
             int rowSize = solution.getRowSize(i);
             result[i] = new int[rowSize];
             for (int j = 0; j < rowSize; j++) {
-                result[i][j] = facilities[i][j].facility.id;
+                result[i][j] = solution.getFacilityId(i, j);
             }
         }
         return result;
@@ -125,11 +124,11 @@ public class IRSDestructive extends Destructive<DRFLPSolution, DRFLPInstance> {
         }
 
         public int getId1() {
-            return solution.getSolutionData()[originRow][originPosition].facility.id;
+            return solution.getFacilityId(originRow, originPosition);
         }
 
         public int getId2() {
-            return solution.getSolutionData()[destRow][destPosition].facility.id;
+            return solution.getFacilityId(destRow, destPosition);
         }
     }
 
@@ -25,7 +25,6 @@ public class RandomRemoveDestructive extends Destructive<DRFLPSolution, DRFLPIns
     @Override
     public DRFLPSolution destroy(DRFLPSolution solution, int k) {
         var instance = solution.getInstance();
-        var facilities = solution.getSolutionData();
 
         // How many facilities should be removed from the solution, remove at least one
         long n = max(1, round(instance.getNRealFacilities() * ratio));
@@ -36,7 +35,7 @@ public class RandomRemoveDestructive extends Destructive<DRFLPSolution, DRFLPIns
         // Get all assigned facilities IDs
         for (int i = 0; i < solution.getNRows(); i++) {
             for (int j = 0; j < solution.getRowSize(i); j++) {
-                allIds.add(facilities[i][j].facility.id);
+                allIds.add(solution.getFacilityId(i, j));
             }
         }
 
@@ -51,7 +50,7 @@ public class RandomRemoveDestructive extends Destructive<DRFLPSolution, DRFLPIns
         newSolution.deassignAll();
         for (int i = 0; i < solution.getNRows(); i++) {
             for (int j = 0; j < solution.getRowSize(i); j++) {
-                var facility = facilities[i][j].facility;
+                var facility = solution.getFacility(i, j);
                 if(!blockedFacilities.contains(facility.id)){
                     newSolution.insertLast(i, facility);
                 }
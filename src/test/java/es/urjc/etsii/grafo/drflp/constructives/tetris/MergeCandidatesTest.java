@@ -0,0 +1,97 @@
+package es.urjc.etsii.grafo.drflp.constructives.tetris;
+
+import es.urjc.etsii.grafo.drflp.model.DRFLPInstance;
+import es.urjc.etsii.grafo.drflp.model.RandomInstances;
+import es.urjc.etsii.grafo.util.random.RandomManager;
+import es.urjc.etsii.grafo.util.random.RandomType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Merge costs, calculated from the piece centers and the cross-row increment, against the full evaluation of the merged pieces
+ */
+class MergeCandidatesTest {
+
+    @Test
+    void randomMerges() {
+        for (int seed = 0; seed < 5; seed++) {
+            mergeAll(seed, 1, 0.8);
+            mergeAll(seed, 1, 0.1);
+        }
+    }
+
+    @Test
+    void bestMerges() {
+        for (int seed = 0; seed < 5; seed++) {
+            mergeAll(seed, 0, 0.8);
+            mergeAll(seed, 0, 0.1);
+        }
+    }
+
+    /**
+     * Merge single facility pieces until only one is left, checking the cost of each merged piece,
+     * and that the best merge is chosen when alpha is 0
+     */
+    private static void mergeAll(int seed, double alpha, double density) {
+        RandomManager.reinitialize(RandomType.LEGACY, seed, 1);
+        RandomManager.reset(0);
+        var random = new Random(seed);
+        var instance = RandomInstances.instance(12, density, random);
+        var solution = RandomInstances.solution(instance, 4, 0, random);
+        var pieces = new ArrayList<Piece>();
+        for (var f : RandomInstances.pending(solution)) {
+            pieces.add(new Piece(instance, RandomInstances.FAKE_WIDTH, new int[][]{{f.id}, {}}, 0));
+        }
+
+        var candidates = new MergeCandidates(instance, pieces, RandomInstances.FAKE_WIDTH);
+        while (pieces.size() > 1) {
+            var merge = candidates.choose(alpha);
+            var merged = merge.merged();
+            assertEquals(RandomInstances.evaluate(instance, merged.data()), merged.cost());
+            double increment = merged.cost() - merge.a().cost() - merge.b().cost();
+            if (alpha == 0) {
+                assertEquals(bestIncrement(instance, pieces), increment);
+            }
+            candidates.merge(merge);
+            pieces.remove(merge.a());
+            pieces.remove(merge.b());
+            pieces.add(merged);
+        }
+    }
+
+    /**
+     * Minimum increment of merging any pair of pieces in any orientation, from the full evaluation of each merged layout
+     */
+    private static double bestIncrement(DRFLPInstance instance, List<Piece> pieces) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < pieces.size(); i++) {
+            for (int j = i + 1; j < pieces.size(); j++) {
+                var a = pieces.get(i).data();
+                var b = pieces.get(j).data();
+                var flippedA = new int[][]{a[1], a[0]};
+                var flippedB = new int[][]{b[1], b[0]};
+                double base = RandomInstances.evaluate(instance, a) + RandomInstances.evaluate(instance, b);
+                for (var merged : List.of(concat(a, b), concat(b, a), concat(flippedA, b), concat(b, flippedA),
+                        concat(a, flippedB), concat(flippedB, a))) {
+                    best = Math.min(best, RandomInstances.evaluate(instance, merged) - base);
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int[][] concat(int[][] left, int[][] right) {
+        var result = new int[left.length][];
+        for (int row = 0; row < left.length; row++) {
+            result[row] = new int[left[row].length + right[row].length];
+            System.arraycopy(left[row], 0, result[row], 0, left[row].length);
+            System.arraycopy(right[row], 0, result[row], left[row].length, right[row].length);
+        }
+        return result;
+    }
+}
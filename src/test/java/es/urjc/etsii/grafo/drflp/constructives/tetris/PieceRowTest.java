@@ -0,0 +1,46 @@
+package es.urjc.etsii.grafo.drflp.constructives.tetris;
+
+import es.urjc.etsii.grafo.drflp.model.FixedPoint;
+import es.urjc.etsii.grafo.drflp.model.RandomInstances;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Flattening and cached widths of rows built by many concatenations, in the shapes left by repeated merges
+ */
+class PieceRowTest {
+
+    private static final int LEAVES = 200_000;
+
+    @Test
+    void leftDeep() {
+        check(false);
+    }
+
+    @Test
+    void rightDeep() {
+        check(true);
+    }
+
+    private static void check(boolean appendLeft) {
+        var instance = RandomInstances.instance(10, 0.5, new Random(0));
+        var expected = new int[LEAVES];
+        long width = 0;
+        var row = PieceRow.of(instance, RandomInstances.FAKE_WIDTH);
+        for (int i = 0; i < LEAVES; i++) {
+            // Every third facility is fake
+            int id = i % 3 == 0 ? -1 - i : i % instance.getNRealFacilities();
+            var leaf = PieceRow.of(instance, RandomInstances.FAKE_WIDTH, id);
+            row = appendLeft ? PieceRow.concat(leaf, row) : PieceRow.concat(row, leaf);
+            expected[appendLeft ? LEAVES - 1 - i : i] = id;
+            width += id < 0 ? FixedPoint.width(RandomInstances.FAKE_WIDTH) : instance.getFixedWidth(id);
+        }
+        assertEquals(LEAVES, row.length());
+        assertEquals(width, row.width());
+        assertArrayEquals(expected, row.toArray());
+    }
+}
@@ -0,0 +1,89 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cross-row profiles against the cost calculated from the current centers of the row,
+ * while the solution is modified between lookups
+ */
+class CrossRowProfilesTest {
+
+    @Test
+    void costAfterMoves() {
+        for (int seed = 0; seed < 5; seed++) {
+            var random = new Random(seed);
+            var instance = RandomInstances.instance(14, 0.8, random);
+            var solution = RandomInstances.solution(instance, 3, random);
+            var profiles = solution.crossRowProfiles();
+            for (int iteration = 0; iteration < 30; iteration++) {
+                checkAllRows(solution, profiles, random);
+                int n = solution.allFacilitiesSize();
+                int first = random.nextInt(n), second = random.nextInt(n);
+                if (first == second) {
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    new SwapNeighborhood.SwapMove(solution, Math.min(first, second), Math.max(first, second)).execute();
+                } else {
+                    new MoveNeighborhood.MoveMove(solution, first, second).execute();
+                }
+            }
+        }
+    }
+
+    @Test
+    void costAfterTemporaryMoves() {
+        var random = new Random(0);
+        var instance = RandomInstances.instance(14, 0.8, random);
+        var solution = RandomInstances.solution(instance, 3, random);
+        var profiles = solution.crossRowProfiles();
+        for (int iteration = 0; iteration < 30; iteration++) {
+            checkAllRows(solution, profiles, random);
+            // Evaluating a move by swap sweeps facilities and restores the rows, the profiles must stay valid
+            new MoveBySwapNeighborhood().getMovements(solution);
+            checkAllRows(solution, profiles, random);
+            int n = solution.allFacilitiesSize();
+            int first = random.nextInt(n), second = random.nextInt(n);
+            if (first != second) {
+                new MoveNeighborhood.MoveMove(solution, first, second).execute();
+            }
+        }
+    }
+
+    private static void checkAllRows(DRFLPSolution solution, CrossRowProfiles profiles, Random random) {
+        var instance = solution.getInstance();
+        long width = FixedPoint.width(RandomInstances.FAKE_WIDTH);
+        for (int row = 0; row < solution.getNRows(); row++) {
+            for (int id = 0; id < instance.getNRealFacilities(); id++) {
+                if (solution.facilityRow[id] == row) {
+                    continue;
+                }
+                long rowWidth = solution.prefixWidths[row][solution.rowSize[row]];
+                for (int k = 0; k < 5; k++) {
+                    // Any center in quarter units, inside or outside the row
+                    long center = random.nextInt((int) (rowWidth + 4 * width)) - width;
+                    assertEquals(cost(solution, row, id, center), profiles.cost(solution, row, id, center));
+                }
+                for (int k = 0; k < solution.realCount[row]; k++) {
+                    long center = solution.realCenters[row][k];
+                    assertEquals(cost(solution, row, id, center), profiles.cost(solution, row, id, center));
+                }
+            }
+        }
+    }
+
+    private static long cost(DRFLPSolution solution, int row, int id, long center) {
+        long cost = 0;
+        for (int index = 0; index < solution.rowSize[row]; index++) {
+            int other = solution.ids[row][index];
+            if (other >= 0) {
+                cost += solution.getInstance().getWeight(id, other) * Math.abs(center - solution.centers[row][index]);
+            }
+        }
+        return cost;
+    }
+}
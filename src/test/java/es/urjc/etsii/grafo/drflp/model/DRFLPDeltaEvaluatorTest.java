@@ -0,0 +1,130 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.evaluate;
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.layout;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Incremental move, swap and removal costs against the full evaluation of the resulting layout,
+ * and incremental center and score updates after executing each move
+ */
+class DRFLPDeltaEvaluatorTest {
+
+    private static final int SEEDS = 5;
+
+    @Test
+    void moveCostDense() {
+        checkMoves(0.8, false);
+    }
+
+    @Test
+    void moveCostSparse() {
+        checkMoves(0.1, true);
+    }
+
+    @Test
+    void swapCostDense() {
+        checkSwaps(0.8, false);
+    }
+
+    @Test
+    void swapCostSparse() {
+        checkSwaps(0.1, true);
+    }
+
+    @Test
+    void removeCost() {
+        for (double density : new double[]{0.8, 0.1}) {
+            for (int seed = 0; seed < SEEDS; seed++) {
+                var random = new Random(seed);
+                var instance = RandomInstances.instance(12, density, random);
+                var solution = RandomInstances.solution(instance, 3, random);
+                double before = evaluate(solution);
+                var layout = layout(solution);
+                for (int row = 0; row < layout.length; row++) {
+                    for (int index = 0; index < layout[row].length; index++) {
+                        var after = layout(solution);
+                        after[row] = without(after[row], index);
+                        assertEquals(evaluate(instance, after) - before, DRFLPDeltaEvaluator.removeCost(solution, row, index),
+                                "Remove " + row + ", " + index);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkMoves(double density, boolean sparse) {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            var random = new Random(seed);
+            var instance = RandomInstances.instance(12, density, random);
+            assertEquals(sparse, instance.isSparse());
+            var solution = RandomInstances.solution(instance, 3, random);
+            double before = evaluate(solution);
+            int n = solution.allFacilitiesSize();
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    if (from == to) {
+                        continue;
+                    }
+                    var copy = solution.cloneSolution();
+                    var move = new MoveNeighborhood.MoveMove(copy, from, to);
+                    double value = move.getValue();
+                    move.execute();
+                    assertEquals(evaluate(copy) - before, value, "Move " + from + " -> " + to);
+                    assertIncrementalState(copy);
+                }
+            }
+        }
+    }
+
+    private static void checkSwaps(double density, boolean sparse) {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            var random = new Random(seed);
+            var instance = RandomInstances.instance(12, density, random);
+            assertEquals(sparse, instance.isSparse());
+            var solution = RandomInstances.solution(instance, 3, random);
+            double before = evaluate(solution);
+            int n = solution.allFacilitiesSize();
+            for (int first = 0; first < n; first++) {
+                for (int second = first + 1; second < n; second++) {
+                    var copy = solution.cloneSolution();
+                    var move = new SwapNeighborhood.SwapMove(copy, first, second);
+                    double value = move.getValue();
+                    move.execute();
+                    assertEquals(evaluate(copy) - before, value, "Swap " + first + " <-> " + second);
+                    assertIncrementalState(copy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Score and centers of the solution must be the ones of its layout
+     */
+    static void assertIncrementalState(DRFLPSolution solution) {
+        var layout = layout(solution);
+        assertEquals(evaluate(solution.getInstance(), layout), solution.getScore());
+        var centers = DRFLPSolution.centers(solution.getInstance(), layout, RandomInstances.FAKE_WIDTH);
+        for (int row = 0; row < layout.length; row++) {
+            var actual = new double[layout[row].length];
+            for (int index = 0; index < actual.length; index++) {
+                actual[index] = solution.getCenter(row, index);
+            }
+            assertArrayEquals(centers[row], actual);
+        }
+        assertTrue(solution.cutWeightsAreValid());
+    }
+
+    private static int[] without(int[] row, int index) {
+        var result = new int[row.length - 1];
+        System.arraycopy(row, 0, result, 0, index);
+        System.arraycopy(row, index + 1, result, index, result.length - index);
+        return result;
+    }
+}
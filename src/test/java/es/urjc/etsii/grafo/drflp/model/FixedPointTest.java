@@ -0,0 +1,66 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Fixed point conversions, and scores in fixed point against a plain floating point evaluation
+ */
+class FixedPointTest {
+
+    @Test
+    void conversions() {
+        for (int quarters = -20; quarters <= 20; quarters++) {
+            double value = quarters / 4.0;
+            assertEquals(quarters, FixedPoint.toFixed(value));
+            assertEquals(value, FixedPoint.toDouble(FixedPoint.toFixed(value)));
+        }
+        assertEquals(2, FixedPoint.width(0.5));
+        assertEquals(12, FixedPoint.width(3));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.toFixed(0.1));
+        assertThrows(IllegalArgumentException.class, () -> FixedPoint.width(0.25));
+    }
+
+    @Test
+    void scores() {
+        for (int seed = 0; seed < 10; seed++) {
+            var random = new Random(seed);
+            var instance = RandomInstances.instance(15, 0.5, random);
+            var solution = RandomInstances.solution(instance, 4, random);
+            var layout = RandomInstances.layout(solution);
+            double expected = floatingPointCost(instance, layout);
+            assertEquals(expected, solution.getScore());
+            assertEquals(expected, solution.recalculateScore());
+            assertEquals(expected, RandomInstances.evaluate(instance, layout));
+        }
+    }
+
+    /**
+     * Cost of the layout calculated with doubles, from the facility widths
+     */
+    private static double floatingPointCost(DRFLPInstance instance, int[][] layout) {
+        int n = instance.getNRealFacilities();
+        var centers = new double[n];
+        for (int[] row : layout) {
+            double left = 0;
+            for (int id : row) {
+                double width = id < 0 ? RandomInstances.FAKE_WIDTH : instance.getWidth(id);
+                if (id >= 0) {
+                    centers[id] = left + width / 2;
+                }
+                left += width;
+            }
+        }
+        double cost = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                cost += instance.getWeight(i, j) * Math.abs(centers[i] - centers[j]);
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,61 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.evaluate;
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.layout;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Insertion profiles of pending facilities against the full evaluation of the layout with the facility inserted
+ */
+class InsertionProfilerTest {
+
+    @Test
+    void profileDense() {
+        checkProfiles(0.8);
+    }
+
+    @Test
+    void profileSparse() {
+        checkProfiles(0.1);
+    }
+
+    private static void checkProfiles(double density) {
+        for (int seed = 0; seed < 5; seed++) {
+            var random = new Random(seed);
+            var instance = RandomInstances.instance(14, density, random);
+            var solution = RandomInstances.solution(instance, 4, 9, random);
+            var layout = layout(solution);
+            double before = evaluate(instance, layout);
+            double score = solution.getScore();
+            for (var f : RandomInstances.pending(solution)) {
+                for (int row = 0; row < solution.getNRows(); row++) {
+                    var costs = new long[solution.getRowSize(row) + 1];
+                    InsertionProfiler.profile(solution, row, f, costs);
+                    var expected = new long[costs.length];
+                    for (int p = 0; p < expected.length; p++) {
+                        var after = layout(solution);
+                        after[row] = with(after[row], p, f.id);
+                        expected[p] = FixedPoint.toFixed(evaluate(instance, after) - before);
+                    }
+                    assertArrayEquals(expected, costs, "Facility " + f.id + ", row " + row);
+                }
+            }
+            // Profiling does not change the layout
+            assertArrayEquals(layout, layout(solution));
+            assertEquals(score, solution.getScore());
+        }
+    }
+
+    private static int[] with(int[] row, int index, int id) {
+        var result = new int[row.length + 1];
+        System.arraycopy(row, 0, result, 0, index);
+        result[index] = id;
+        System.arraycopy(row, index, result, index + 1, row.length - index);
+        return result;
+    }
+}
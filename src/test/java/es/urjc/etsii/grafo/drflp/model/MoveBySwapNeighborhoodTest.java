@@ -0,0 +1,37 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static es.urjc.etsii.grafo.drflp.model.DRFLPDeltaEvaluatorTest.assertIncrementalState;
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.evaluate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Values of the move by swap moves, whose same row part comes from the cut weights,
+ * against the full evaluation after executing them
+ */
+class MoveBySwapNeighborhoodTest {
+
+    @Test
+    void moveValues() {
+        for (double density : new double[]{0.8, 0.1}) {
+            for (int seed = 0; seed < 5; seed++) {
+                var random = new Random(seed);
+                var instance = RandomInstances.instance(12, density, random);
+                var solution = RandomInstances.solution(instance, 3, random);
+                double before = evaluate(solution);
+                var moves = new MoveBySwapNeighborhood().getMovements(solution);
+                assertFalse(moves.isEmpty());
+                for (var move : moves) {
+                    var copy = solution.cloneSolution();
+                    move.withSolution(copy).execute();
+                    assertEquals(evaluate(copy) - before, move.getValue(), move::toString);
+                    assertIncrementalState(copy);
+                }
+            }
+        }
+    }
+}
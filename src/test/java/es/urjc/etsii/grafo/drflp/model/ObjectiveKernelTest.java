@@ -0,0 +1,58 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pair cost kernel, vectorized if available, against the scalar kernel and a plain double loop.
+ * Sizes that are not a multiple of any vector length check the tail of the vectorized loop.
+ */
+class ObjectiveKernelTest {
+
+    @Test
+    void pairCost() {
+        var random = new Random(0);
+        for (int n : new int[]{0, 1, 2, 3, 7, 8, 9, 15, 16, 17, 31, 33, 40}) {
+            var instance = RandomInstances.instance(n, 0.6, random);
+            var ids = new int[n + 5];
+            var centers = new double[n + 5];
+            for (int i = 0; i < n; i++) {
+                ids[i] = i;
+            }
+            for (int rep = 0; rep < 5; rep++) {
+                shuffle(ids, n, random);
+                for (int i = 0; i < n; i++) {
+                    centers[i] = random.nextInt(400);
+                }
+                long expected = plainPairCost(instance, ids, centers, n);
+                assertEquals(expected, ObjectiveKernel.scalarPairCost(instance, ids, centers, n));
+                assertEquals(expected, ObjectiveKernel.pairCost(instance, ids, centers, n), "Vectorized: " + ObjectiveKernel.VECTORIZED);
+                // Only the first elements are used
+                int m = n / 2;
+                assertEquals(plainPairCost(instance, ids, centers, m), ObjectiveKernel.pairCost(instance, ids, centers, m));
+            }
+        }
+    }
+
+    private static long plainPairCost(DRFLPInstance instance, int[] ids, double[] centers, int n) {
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                total += instance.getWeight(ids[i], ids[j]) * (long) Math.abs(centers[i] - centers[j]);
+            }
+        }
+        return total;
+    }
+
+    private static void shuffle(int[] ids, int n, Random random) {
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static es.urjc.etsii.grafo.drflp.model.DRFLPDeltaEvaluatorTest.assertIncrementalState;
+import static es.urjc.etsii.grafo.drflp.model.RandomInstances.evaluate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Values of the 2-opt moves, evaluated incrementally from the reversal windows,
+ * against the full evaluation after executing them
+ */
+class OptNeighborhoodTest {
+
+    @Test
+    void moveValues() {
+        for (double density : new double[]{0.8, 0.1}) {
+            for (int seed = 0; seed < 5; seed++) {
+                var random = new Random(seed);
+                var instance = RandomInstances.instance(12, density, random);
+                var solution = RandomInstances.solution(instance, 3, random);
+                double before = evaluate(solution);
+                // Moves of each row share and extend the same reversal window, so they are generated in stream order
+                var moves = new OptNeighborhood().stream(solution).toList();
+                for (int i = 0; i < moves.size(); i++) {
+                    var copy = solution.cloneSolution();
+                    new OptNeighborhood().stream(copy).skip(i).findFirst().orElseThrow().execute();
+                    assertEquals(evaluate(copy) - before, moves.get(i).getValue(), moves.get(i)::toString);
+                    assertIncrementalState(copy);
+                }
+            }
+        }
+    }
+}
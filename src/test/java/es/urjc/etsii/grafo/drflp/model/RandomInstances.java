@@ -0,0 +1,100 @@
+package es.urjc.etsii.grafo.drflp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Small random instances and solutions, used to compare incremental evaluations with DRFLPSolution.evaluate
+ */
+public final class RandomInstances {
+
+    public static final double FAKE_WIDTH = 0.5;
+
+    private RandomInstances() {}
+
+    /**
+     * Random instance with integer widths and symmetric weights
+     * @param n number of real facilities
+     * @param density probability of each pair of facilities having nonzero weight
+     * @param random random source
+     * @return instance
+     */
+    public static DRFLPInstance instance(int n, double density, Random random) {
+        var facilities = new Facility[n];
+        for (int i = 0; i < n; i++) {
+            facilities[i] = new Facility(i, 1 + random.nextInt(5));
+        }
+        var weights = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (random.nextDouble() < density) {
+                    weights[i][j] = weights[j][i] = 1 + random.nextInt(10);
+                }
+            }
+        }
+        return new DRFLPInstance("random", facilities, weights);
+    }
+
+    /**
+     * Solution with the given number of fake facilities and the given number of facilities assigned to random rows,
+     * in random order. The rest of facilities stay pending.
+     */
+    public static DRFLPSolution solution(DRFLPInstance instance, int nFakes, int nAssigned, Random random) {
+        var solution = new DRFLPSolution(instance);
+        var widths = new double[nFakes];
+        Arrays.fill(widths, FAKE_WIDTH);
+        solution.addFakeFacilities(widths);
+        var pending = pending(solution);
+        Collections.shuffle(pending, random);
+        for (var f : pending.subList(0, nAssigned)) {
+            solution.insertLast(random.nextInt(solution.getNRows()), f);
+        }
+        return solution;
+    }
+
+    /**
+     * Solution with every facility assigned, see solution(DRFLPInstance, int, int, Random)
+     */
+    public static DRFLPSolution solution(DRFLPInstance instance, int nFakes, Random random) {
+        return solution(instance, nFakes, instance.getNRealFacilities() + nFakes, random);
+    }
+
+    /**
+     * Facilities not assigned yet, real and fake
+     */
+    public static List<Facility> pending(DRFLPSolution solution) {
+        var pending = new ArrayList<Facility>();
+        for (int slot = solution.nextPendingSlot(0); slot >= 0; slot = solution.nextPendingSlot(slot + 1)) {
+            pending.add(solution.getPendingFacility(slot));
+        }
+        return pending;
+    }
+
+    /**
+     * Facility ids of each row
+     */
+    public static int[][] layout(DRFLPSolution solution) {
+        var layout = new int[solution.getNRows()][];
+        for (int row = 0; row < layout.length; row++) {
+            layout[row] = Arrays.copyOf(solution.ids[row], solution.rowSize[row]);
+        }
+        return layout;
+    }
+
+    /**
+     * Full evaluation of the given layout
+     */
+    public static double evaluate(DRFLPInstance instance, int[][] layout) {
+        return DRFLPSolution.evaluate(instance, layout, FAKE_WIDTH);
+    }
+
+    /**
+     * Full evaluation of the current layout of the solution
+     */
+    public static double evaluate(DRFLPSolution solution) {
+        return evaluate(solution.getInstance(), layout(solution));
+    }
+}